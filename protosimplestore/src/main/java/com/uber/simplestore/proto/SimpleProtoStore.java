@@ -19,6 +19,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.MessageLite;
 import com.google.protobuf.Parser;
 import com.uber.simplestore.SimpleStore;
+import java.util.Collection;
+import java.util.Map;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
 
@@ -45,4 +47,27 @@ public interface SimpleProtoStore extends SimpleStore {
    */
   @CheckReturnValue
   <T extends MessageLite> ListenableFuture<T> put(String key, @Nullable T value);
+
+  /**
+   * Read several protocol buffers of the same type from disk in a single operation
+   *
+   * @param keys to read from
+   * @param parser to parse with
+   * @param <T> proto type
+   * @return value of every key, default instance of T if absent
+   */
+  @CheckReturnValue
+  <T extends MessageLite> ListenableFuture<Map<String, T>> getAll(
+      Collection<String> keys, Parser<T> parser);
+
+  /**
+   * Write several protocol buffers to disk in a single operation. A default instance removes its
+   * key.
+   *
+   * @param values to store by key
+   * @param <T> proto type
+   * @return when complete
+   */
+  @CheckReturnValue
+  <T extends MessageLite> ListenableFuture<Void> putAllMessages(Map<String, T> values);
 }
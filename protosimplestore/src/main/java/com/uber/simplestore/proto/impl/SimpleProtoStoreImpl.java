@@ -15,53 +15,88 @@
  */
 package com.uber.simplestore.proto.impl;
 
+import com.google.common.base.Function;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
 import com.google.protobuf.Parser;
+import com.uber.simplestore.CacheStats;
+import com.uber.simplestore.Durability;
 import com.uber.simplestore.NamespaceConfig;
 import com.uber.simplestore.SimpleStore;
 import com.uber.simplestore.SimpleStoreConfig;
+import com.uber.simplestore.Transaction;
+import com.uber.simplestore.ValueOutputStream;
+import com.uber.simplestore.impl.DecodedValueCache;
 import com.uber.simplestore.proto.SimpleProtoStore;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 @SuppressWarnings("UnstableApiUsage")
 public final class SimpleProtoStoreImpl implements SimpleProtoStore {
   private final SimpleStore simpleStore;
   private final NamespaceConfig config;
+  @Nullable private final DecodedValueCache messages;
 
   SimpleProtoStoreImpl(SimpleStore simpleStore, NamespaceConfig config) {
     this.simpleStore = simpleStore;
     this.config = config;
+    long budget = config.getMessageCacheBudgetBytes();
+    this.messages = budget > 0 ? new DecodedValueCache(budget) : null;
   }
 
   @Override
   public <T extends MessageLite> ListenableFuture<T> get(String key, Parser<T> parser) {
+    DecodedValueCache cache = messages;
+    if (cache != null) {
+      byte[] cached = simpleStore.getIfCached(key);
+      if (cached == null) {
+        // Evicted or about to change, the message can't be reused.
+        cache.remove(key);
+      } else {
+        ListenableFuture<T> message = cache.get(key, cached, parser);
+        if (message != null) {
+          return message;
+        }
+      }
+    }
     return Futures.transformAsync(
         simpleStore.get(key),
         (bytes) -> {
-          T parsed;
-          if (bytes == null || bytes.length == 0) {
-            try {
-              parsed = parser.parseFrom(ByteString.EMPTY);
-            } catch (InvalidProtocolBufferException e) {
-              // Has required fields, so we will pass this error forward.
-              return Futures.immediateFailedFuture(e);
-            }
-          } else {
-            try {
-              parsed = parser.parseFrom(bytes);
-            } catch (InvalidProtocolBufferException e) {
-              if (config.equals(NamespaceConfig.CACHE)) {
-                // A cache is allowed to be cleared whenever and we will try and give you a default
-                // instance instead.
-                return Futures.immediateFuture(parser.parseFrom(ByteString.EMPTY));
-              } else {
-                return Futures.immediateFailedFuture(e);
-              }
+          ListenableFuture<T> message;
+          try {
+            message = Futures.immediateFuture(parse(bytes, parser));
+          } catch (InvalidProtocolBufferException e) {
+            return Futures.immediateFailedFuture(e);
+          }
+          if (cache != null && bytes != null) {
+            cache.put(key, bytes, parser, message);
+          }
+          return message;
+        },
+        SimpleStoreConfig.getComputationExecutor());
+  }
+
+  @Override
+  public <T extends MessageLite> ListenableFuture<Map<String, T>> getAll(
+      Collection<String> keys, Parser<T> parser) {
+    return Futures.transformAsync(
+        simpleStore.getAll(keys),
+        (values) -> {
+          Map<String, T> parsed = new LinkedHashMap<>();
+          try {
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+              parsed.put(entry.getKey(), parse(entry.getValue(), parser));
             }
+          } catch (InvalidProtocolBufferException e) {
+            return Futures.immediateFailedFuture(e);
           }
           return Futures.immediateFuture(parsed);
         },
@@ -88,6 +123,27 @@ public final class SimpleProtoStoreImpl implements SimpleProtoStore {
         SimpleStoreConfig.getComputationExecutor());
   }
 
+  @Override
+  public <T extends MessageLite> ListenableFuture<Void> putAllMessages(Map<String, T> values) {
+    ListenableFuture<Map<String, byte[]>> protos =
+        Futures.submitAsync(
+            () -> {
+              Map<String, byte[]> serialized = new LinkedHashMap<>();
+              for (Map.Entry<String, T> entry : values.entrySet()) {
+                T value = entry.getValue();
+                byte[] bytes = null;
+                if (value != null && !value.equals(value.getDefaultInstanceForType())) {
+                  bytes = value.toByteArray();
+                }
+                serialized.put(entry.getKey(), bytes);
+              }
+              return Futures.immediateFuture(serialized);
+            },
+            SimpleStoreConfig.getComputationExecutor());
+    return Futures.transformAsync(
+        protos, simpleStore::putAll, SimpleStoreConfig.getComputationExecutor());
+  }
+
   @Override
   public ListenableFuture<Boolean> contains(String key) {
     return Futures.transform(
@@ -116,23 +172,134 @@ public final class SimpleProtoStoreImpl implements SimpleProtoStore {
     return simpleStore.put(key, value);
   }
 
+  @Override
+  public ListenableFuture<byte[]> put(String key, @Nullable byte[] value, Durability durability) {
+    return simpleStore.put(key, value, durability);
+  }
+
   @Override
   public ListenableFuture<Void> remove(String key) {
     return simpleStore.remove(key);
   }
 
+  @Override
+  public ListenableFuture<byte[]> update(String key, Function<byte[], byte[]> function) {
+    return simpleStore.update(key, function);
+  }
+
+  @Override
+  public ListenableFuture<Boolean> compareAndSet(
+      String key, @Nullable byte[] expect, @Nullable byte[] update) {
+    return simpleStore.compareAndSet(key, expect, update);
+  }
+
+  @Override
+  public ListenableFuture<Map<String, byte[]>> getAll(Collection<String> keys) {
+    return simpleStore.getAll(keys);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAll(Map<String, byte[]> values) {
+    return simpleStore.putAll(values);
+  }
+
+  @Override
+  public ListenableFuture<Void> removeAll(Collection<String> keys) {
+    return simpleStore.removeAll(keys);
+  }
+
+  @Override
+  public ListenableFuture<Void> commit(Transaction transaction) {
+    return simpleStore.commit(transaction);
+  }
+
+  @Override
+  public ListenableFuture<List<String>> keys() {
+    return simpleStore.keys();
+  }
+
+  @Override
+  public ListenableFuture<List<String>> keysWithPrefix(String prefix) {
+    return simpleStore.keysWithPrefix(prefix);
+  }
+
+  @Override
+  public ListenableFuture<Void> scan(String prefix, EntryVisitor visitor) {
+    return simpleStore.scan(prefix, visitor);
+  }
+
+  @Override
+  public ListenableFuture<ByteBuffer> getBuffer(String key) {
+    return simpleStore.getBuffer(key);
+  }
+
+  @Override
+  public ListenableFuture<InputStream> openInputStream(String key) {
+    return simpleStore.openInputStream(key);
+  }
+
+  @Override
+  public ListenableFuture<ByteBuffer> putBuffer(String key, @Nullable ByteBuffer value) {
+    return simpleStore.putBuffer(key, value);
+  }
+
+  @Override
+  public ListenableFuture<ValueOutputStream> openOutputStream(String key) {
+    return simpleStore.openOutputStream(key);
+  }
+
+  @Nullable
+  @Override
+  public byte[] getIfCached(String key) {
+    return simpleStore.getIfCached(key);
+  }
+
+  @Override
+  public CacheStats getCacheStats() {
+    return simpleStore.getCacheStats();
+  }
+
   @Override
   public ListenableFuture<Void> clear() {
+    clearMessages();
     return simpleStore.clear();
   }
 
   @Override
   public ListenableFuture<Void> deleteAllNow() {
+    clearMessages();
     return simpleStore.deleteAllNow();
   }
 
   @Override
   public void close() {
+    clearMessages();
     simpleStore.close();
   }
+
+  private void clearMessages() {
+    DecodedValueCache cache = messages;
+    if (cache != null) {
+      cache.clear();
+    }
+  }
+
+  private <T extends MessageLite> T parse(@Nullable byte[] bytes, Parser<T> parser)
+      throws InvalidProtocolBufferException {
+    if (bytes == null || bytes.length == 0) {
+      // Fails if the type has required fields, so we will pass this error forward.
+      return parser.parseFrom(ByteString.EMPTY);
+    }
+    try {
+      return parser.parseFrom(bytes);
+    } catch (InvalidProtocolBufferException e) {
+      if (config.isCache()) {
+        // A cache is allowed to be cleared whenever and we will try and give you a default
+        // instance instead.
+        return parser.parseFrom(ByteString.EMPTY);
+      } else {
+        throw e;
+      }
+    }
+  }
 }
@@ -29,6 +29,9 @@ import com.uber.simplestore.impl.AndroidDirectoryProvider;
 import com.uber.simplestore.proto.impl.SimpleProtoStoreFactory;
 import com.uber.simplestore.proto.test.TestProto;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -121,4 +124,42 @@ public class SimpleProtoStoreImplTest {
       assertThat(failed).isEqualTo(TestProto.Basic.getDefaultInstance());
     }
   }
+
+  @Test
+  public void bulkValues() throws Exception {
+    TestProto.Basic basic = TestProto.Basic.newBuilder().setName(FOO).build();
+    Map<String, TestProto.Basic> values = new LinkedHashMap<>();
+    values.put(TEST_KEY, basic);
+    values.put("default", TestProto.Basic.getDefaultInstance());
+    try (SimpleProtoStore store = SimpleProtoStoreFactory.create(directoryProvider, "")) {
+      store.putAllMessages(values).get();
+      assertThat(store.contains("default").get()).isFalse();
+    }
+    try (SimpleProtoStore store = SimpleProtoStoreFactory.create(directoryProvider, "")) {
+      Map<String, TestProto.Basic> out =
+          store.getAll(Arrays.asList(TEST_KEY, "default"), TestProto.Basic.parser()).get();
+      assertThat(out).containsExactlyEntriesIn(values).inOrder();
+    }
+  }
+
+  @Test
+  public void parsedMessagesReused() throws Exception {
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT.toBuilder().setMessageCacheBudgetBytes(64 * 1024).build();
+    TestProto.Basic basic = TestProto.Basic.newBuilder().setName(FOO).build();
+    try (SimpleProtoStore store = SimpleProtoStoreFactory.create(directoryProvider, "", config)) {
+      store.put(TEST_KEY, basic).get();
+      TestProto.Basic first = store.get(TEST_KEY, TestProto.Basic.parser()).get();
+      assertThat(first).isEqualTo(basic);
+      assertThat(store.get(TEST_KEY, TestProto.Basic.parser()).get()).isSameInstanceAs(first);
+
+      // Any write to the key, through any API, is seen by the next read.
+      TestProto.Basic other = TestProto.Basic.newBuilder().setName("bar").build();
+      store.put(TEST_KEY, other.toByteArray()).get();
+      assertThat(store.get(TEST_KEY, TestProto.Basic.parser()).get()).isEqualTo(other);
+      store.remove(TEST_KEY).get();
+      assertThat(store.get(TEST_KEY, TestProto.Basic.parser()).get())
+          .isEqualTo(TestProto.Basic.getDefaultInstance());
+    }
+  }
 }
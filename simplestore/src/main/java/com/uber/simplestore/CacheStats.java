@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+/** Snapshot of the counters of a namespace's memory cache. */
+public final class CacheStats {
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final long sizeBytes;
+  private final long budgetBytes;
+
+  public CacheStats(
+      long hitCount, long missCount, long evictionCount, long sizeBytes, long budgetBytes) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.sizeBytes = sizeBytes;
+    this.budgetBytes = budgetBytes;
+  }
+
+  /** Reads served from memory. */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Reads that went to disk. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Entries dropped to stay within the budget or to release memory. */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Estimated heap held by cached entries. */
+  public long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  /** Most heap the cache may hold, see {@link NamespaceConfig#getCacheBudgetBytes()}. */
+  public long getBudgetBytes() {
+    return budgetBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{hits="
+        + hitCount
+        + ", misses="
+        + missCount
+        + ", evictions="
+        + evictionCount
+        + ", size="
+        + sizeBytes
+        + "/"
+        + budgetBytes
+        + "}";
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a value read from disk fails its checksum, such as after a torn write. Namespaces
+ * derived from {@link NamespaceConfig#CACHE} return a miss instead.
+ */
+public final class CorruptValueException extends IOException {
+  public CorruptValueException(String message) {
+    super(message);
+  }
+}
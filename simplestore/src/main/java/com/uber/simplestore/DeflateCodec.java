@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+
+/**
+ * Compresses values with the JDK's {@link Deflater}, optionally primed with a preset dictionary.
+ *
+ * <p>A dictionary helps many small values that share content, such as JSON with the same field
+ * names, which compress poorly on their own. Values record which dictionary they were compressed
+ * with, so a namespace must keep the dictionary its values need to be read back.
+ */
+public final class DeflateCodec implements ValueCodec {
+
+  private static final int ID = 1;
+  // Deflate never compresses better than this, a larger length is corrupt.
+  private static final int MAX_RATIO = 1032;
+
+  private final int level;
+  @Nullable private final byte[] dictionary;
+
+  /** Compress with the default level and no dictionary. */
+  public DeflateCodec() {
+    this(Deflater.DEFAULT_COMPRESSION, null);
+  }
+
+  /**
+   * @param level of {@link Deflater}, from {@link Deflater#BEST_SPEED} to {@link
+   *     Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+   * @param dictionary to prime compression with, such as one from {@link #trainDictionary}
+   */
+  public DeflateCodec(int level, @Nullable byte[] dictionary) {
+    if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+        && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid level " + level);
+    }
+    this.level = level;
+    this.dictionary = dictionary == null ? null : dictionary.clone();
+  }
+
+  /**
+   * Build a dictionary from sample values, such as recently written ones.
+   *
+   * <p>Deflate finds repeated strings in the dictionary as it would in earlier input, and strings
+   * near its end are the cheapest to reference, so the most recent samples are kept last and the
+   * oldest dropped beyond the size.
+   *
+   * @param samples values in the order they were written
+   * @param maxBytes of the dictionary, at most 32 KiB are used
+   * @return dictionary
+   */
+  public static byte[] trainDictionary(List<byte[]> samples, int maxBytes) {
+    int size = Math.min(maxBytes, 32 * 1024);
+    List<byte[]> kept = new ArrayList<>();
+    int total = 0;
+    for (int i = samples.size() - 1; i >= 0 && total < size; i--) {
+      byte[] sample = samples.get(i);
+      int length = Math.min(sample.length, size - total);
+      kept.add(Arrays.copyOfRange(sample, sample.length - length, sample.length));
+      total += length;
+    }
+    ByteArrayOutputStream dictionary = new ByteArrayOutputStream(total);
+    for (int i = kept.size() - 1; i >= 0; i--) {
+      byte[] sample = kept.get(i);
+      dictionary.write(sample, 0, sample.length);
+    }
+    return dictionary.toByteArray();
+  }
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public byte[] encode(byte[] value) {
+    Deflater deflater = new Deflater(level);
+    try {
+      if (dictionary != null) {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(value);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(value.length / 2 + 16);
+      byte[] buffer = new byte[Math.min(Math.max(value.length, 64), 8192)];
+      while (!deflater.finished()) {
+        int written = deflater.deflate(buffer);
+        out.write(buffer, 0, written);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded, int offset, int length, int decodedLength)
+      throws IOException {
+    if (decodedLength < 0 || decodedLength > (length + 1L) * MAX_RATIO) {
+      throw new IOException(length + " bytes cannot inflate to " + decodedLength);
+    }
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(encoded, offset, length);
+      byte[] value = new byte[decodedLength];
+      byte[] excess = new byte[1];
+      int read = 0;
+      while (!inflater.finished()) {
+        int inflated;
+        if (read < decodedLength) {
+          inflated = inflater.inflate(value, read, decodedLength - read);
+        } else if (inflater.inflate(excess) > 0) {
+          throw new IOException("Value is longer than " + decodedLength + " bytes");
+        } else {
+          inflated = 0;
+        }
+        if (inflated == 0) {
+          if (inflater.needsDictionary()) {
+            if (dictionary == null) {
+              throw new IOException("Value needs a dictionary");
+            }
+            // Fails unless it is the dictionary the value was compressed with.
+            inflater.setDictionary(dictionary);
+          } else if (inflater.needsInput()) {
+            throw new IOException("Value is truncated");
+          }
+        }
+        read += inflated;
+      }
+      if (read != decodedLength) {
+        throw new IOException("Value is " + read + " bytes, expected " + decodedLength);
+      }
+      return value;
+    } catch (DataFormatException | IllegalArgumentException e) {
+      throw new IOException("Corrupt value", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
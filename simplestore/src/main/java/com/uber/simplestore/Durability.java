@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+/**
+ * How much a completed write survives a process or device crash. Declared from strongest to
+ * weakest.
+ */
+public enum Durability {
+  /** The write is synced to disk before it completes. */
+  SYNC,
+
+  /**
+   * The write atomically replaces the previous value but is not synced, so a crash may lose it and
+   * leave the previous value in place.
+   */
+  ATOMIC,
+
+  /**
+   * The write may be made in place and is not synced, so a crash may lose it or leave a torn value.
+   * Only suited to data which can be regenerated.
+   */
+  BEST_EFFORT
+}
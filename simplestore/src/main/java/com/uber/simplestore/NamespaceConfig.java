@@ -15,22 +15,351 @@
  */
 package com.uber.simplestore;
 
+import javax.annotation.Nullable;
+
 /** Configure how the store accesses a namespace. */
 public final class NamespaceConfig {
+  /** Memory cache budget that never evicts. */
+  public static final long UNBOUNDED = Long.MAX_VALUE;
+
+  private static final long DEFAULT_CACHE_BUDGET_BYTES = 1024 * 1024;
+
   /**
    * Opens a namespace as performance & integrity critical.
    *
-   * <p>Bypasses future memory use optimizations.
+   * <p>Bypasses future memory use optimizations, such as the memory cache budget.
    */
-  public static final NamespaceConfig CRITICAL = new NamespaceConfig();
+  public static final NamespaceConfig CRITICAL =
+      new Builder().setCritical(true).setCacheBudgetBytes(UNBOUNDED).build();
 
   /**
    * Use the cache directory.
    *
-   * <p>Hides errors due to data corruption by returning a miss.
+   * <p>Hides errors due to data corruption by returning a miss. Values are checksummed and writes
+   * are {@link Durability#ATOMIC}. Values written before checksums were turned on are read
+   * unverified, so a torn one could not be told apart from a valid one.
    */
-  public static final NamespaceConfig CACHE = new NamespaceConfig();
+  public static final NamespaceConfig CACHE =
+      new Builder().setCache(true).setChecksummed(true).setDurability(Durability.ATOMIC).build();
 
   /** Default settings. */
-  public static final NamespaceConfig DEFAULT = new NamespaceConfig();
+  public static final NamespaceConfig DEFAULT = new Builder().build();
+
+  private final boolean critical;
+  private final boolean cache;
+  private final StorageFormat storageFormat;
+  private final Durability durability;
+  private final long cacheBudgetBytes;
+  private final boolean preload;
+  private final boolean parallelReads;
+  private final int stripes;
+  @Nullable private final ValueCodec codec;
+  private final int compressionThresholdBytes;
+  private final boolean checksummed;
+  private final StringEncoding stringEncoding;
+  private final boolean rewriteLegacyStrings;
+  private final long messageCacheBudgetBytes;
+
+  private NamespaceConfig(Builder builder) {
+    this.critical = builder.critical;
+    this.cache = builder.cache;
+    this.storageFormat = builder.storageFormat;
+    this.durability = builder.durability;
+    this.cacheBudgetBytes = builder.cacheBudgetBytes;
+    this.preload = builder.preload;
+    this.parallelReads = builder.parallelReads;
+    this.stripes = builder.stripes;
+    this.codec = builder.codec;
+    this.compressionThresholdBytes = builder.compressionThresholdBytes;
+    this.checksummed = builder.checksummed;
+    this.stringEncoding = builder.stringEncoding;
+    this.rewriteLegacyStrings = builder.rewriteLegacyStrings;
+    this.messageCacheBudgetBytes = builder.messageCacheBudgetBytes;
+  }
+
+  /** If the namespace was derived from {@link #CRITICAL}. */
+  public boolean isCritical() {
+    return critical;
+  }
+
+  /** If the namespace was derived from {@link #CACHE}. */
+  public boolean isCache() {
+    return cache;
+  }
+
+  public StorageFormat getStorageFormat() {
+    return storageFormat;
+  }
+
+  /** Durability of a write unless overridden on the individual put. */
+  public Durability getDurability() {
+    return durability;
+  }
+
+  /** Most heap the memory cache of the namespace may hold before evicting least recently used. */
+  public long getCacheBudgetBytes() {
+    return cacheBudgetBytes;
+  }
+
+  /** If every key is read into the memory cache when the namespace opens. */
+  public boolean isPreload() {
+    return preload;
+  }
+
+  /** If reads of uncached keys run in parallel instead of in the namespace's queue. */
+  public boolean isParallelReads() {
+    return parallelReads;
+  }
+
+  /** Number of stripes keys are hashed into, each with its own ordering of reads and writes. */
+  public int getStripes() {
+    return stripes;
+  }
+
+  /** Codec that compresses values written to the namespace, null to write them as is. */
+  @Nullable
+  public ValueCodec getCodec() {
+    return codec;
+  }
+
+  /** Size from which values written to the namespace are compressed. */
+  public int getCompressionThresholdBytes() {
+    return compressionThresholdBytes;
+  }
+
+  /** If values are written with a checksum verified when they are read. */
+  public boolean isChecksummed() {
+    return checksummed;
+  }
+
+  /** Encoding of the strings written to the namespace. */
+  public StringEncoding getStringEncoding() {
+    return stringEncoding;
+  }
+
+  /** If strings read in another encoding than the namespace's are written back in it. */
+  public boolean isRewriteLegacyStrings() {
+    return rewriteLegacyStrings;
+  }
+
+  /** Most heap a proto store may hold in parsed messages, zero if it parses on every read. */
+  public long getMessageCacheBudgetBytes() {
+    return messageCacheBudgetBytes;
+  }
+
+  /**
+   * Derive a new configuration from this one.
+   *
+   * <p>Usage: {@code NamespaceConfig.CACHE.toBuilder().setStorageFormat(...).build()}
+   */
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  /** Builds a {@link NamespaceConfig} derived from one of the base configurations. */
+  public static final class Builder {
+    private boolean critical;
+    private boolean cache;
+    private StorageFormat storageFormat = StorageFormat.FILE_PER_KEY;
+    private Durability durability = Durability.SYNC;
+    private long cacheBudgetBytes = DEFAULT_CACHE_BUDGET_BYTES;
+    private boolean preload;
+    private boolean parallelReads;
+    private int stripes = 1;
+    @Nullable private ValueCodec codec;
+    private int compressionThresholdBytes;
+    private boolean checksummed;
+    private StringEncoding stringEncoding = StringEncoding.UTF_16BE;
+    private boolean rewriteLegacyStrings;
+    private long messageCacheBudgetBytes;
+
+    private Builder() {}
+
+    private Builder(NamespaceConfig config) {
+      this.critical = config.critical;
+      this.cache = config.cache;
+      this.storageFormat = config.storageFormat;
+      this.durability = config.durability;
+      this.cacheBudgetBytes = config.cacheBudgetBytes;
+      this.preload = config.preload;
+      this.parallelReads = config.parallelReads;
+      this.stripes = config.stripes;
+      this.codec = config.codec;
+      this.compressionThresholdBytes = config.compressionThresholdBytes;
+      this.checksummed = config.checksummed;
+      this.stringEncoding = config.stringEncoding;
+      this.rewriteLegacyStrings = config.rewriteLegacyStrings;
+      this.messageCacheBudgetBytes = config.messageCacheBudgetBytes;
+    }
+
+    private Builder setCritical(boolean critical) {
+      this.critical = critical;
+      return this;
+    }
+
+    private Builder setCache(boolean cache) {
+      this.cache = cache;
+      return this;
+    }
+
+    /**
+     * Set the on-disk layout of the namespace. Defaults to {@link StorageFormat#FILE_PER_KEY}.
+     *
+     * <p>The format must not change between opens of a namespace, existing data is not migrated.
+     */
+    public Builder setStorageFormat(StorageFormat storageFormat) {
+      this.storageFormat = storageFormat;
+      return this;
+    }
+
+    /**
+     * Set the durability of writes to the namespace. Defaults to {@link Durability#SYNC}, or {@link
+     * Durability#ATOMIC} for {@link #CACHE}.
+     */
+    public Builder setDurability(Durability durability) {
+      this.durability = durability;
+      return this;
+    }
+
+    /**
+     * Set the most heap the memory cache may hold, estimated from the size of keys and values.
+     * Defaults to 1 MiB, or {@link #UNBOUNDED} for {@link #CRITICAL}. Zero disables the cache.
+     */
+    public Builder setCacheBudgetBytes(long cacheBudgetBytes) {
+      if (cacheBudgetBytes < 0) {
+        throw new IllegalArgumentException("Negative cache budget " + cacheBudgetBytes);
+      }
+      this.cacheBudgetBytes = cacheBudgetBytes;
+      return this;
+    }
+
+    /**
+     * Read every key into the memory cache when the namespace opens, for namespaces that are read
+     * almost completely on every launch. Defaults to false.
+     *
+     * <p>{@link StorageFormat#FILE_PER_KEY} keys are read in parallel on the IO executor, and a get
+     * issued meanwhile only waits for its own key. {@link StorageFormat#APPEND_LOG} and {@link
+     * StorageFormat#PACKED_TABLE} namespaces are read in one pass of their file before any other
+     * operation. Values beyond the cache budget are evicted as usual.
+     */
+    public Builder setPreload(boolean preload) {
+      this.preload = preload;
+      return this;
+    }
+
+    /**
+     * Read uncached keys on the IO executor in parallel, rather than one at a time in the
+     * namespace's queue, so one slow read does not hold up reads of other keys. Operations still
+     * take effect in the order they were issued: a write to a key waits for its reads in flight.
+     * Defaults to false.
+     *
+     * <p>Only applies to {@link StorageFormat#FILE_PER_KEY}. Reads the IO executor has no thread
+     * for yet are run by the namespace's queue once it needs them, so a bounded executor is safe.
+     */
+    public Builder setParallelReads(boolean parallelReads) {
+      this.parallelReads = parallelReads;
+      return this;
+    }
+
+    /**
+     * Order operations per stripe of keys rather than across the whole namespace, so reads and
+     * writes of keys in different stripes run concurrently on the IO executor. Defaults to 1, one
+     * ordering for the namespace.
+     *
+     * <p>Operations on a single key still take effect in the order they were issued. Operations
+     * spanning keys, such as bulk puts, transactions, listing keys and {@code clear}, wait for
+     * every stripe first, running any stripe work not yet started themselves. Each write is synced
+     * on its own instead of sharing a sync with queued writes to other keys. Only applies to
+     * {@link StorageFormat#FILE_PER_KEY}.
+     */
+    public Builder setStripes(int stripes) {
+      if (stripes < 1) {
+        throw new IllegalArgumentException("At least one stripe required, got " + stripes);
+      }
+      this.stripes = stripes;
+      return this;
+    }
+
+    /**
+     * Compress values of at least a given size when they are written, trading CPU for fewer bytes
+     * read, written and synced. Defaults to no compression.
+     *
+     * <p>Values carry a header naming their codec, so values written before compression was turned
+     * on keep reading correctly. Compressed values can only be read back while their codec, and
+     * dictionary if any, is configured, except {@link DeflateCodec} values without a dictionary.
+     * Values are cached and returned uncompressed, and values written with {@link
+     * SimpleStore#openOutputStream(String)} are never compressed.
+     *
+     * @param codec to compress with, such as {@link DeflateCodec}, or null to stop compressing
+     * @param thresholdBytes smallest value to compress, smaller ones gain little
+     */
+    public Builder setCompression(@Nullable ValueCodec codec, int thresholdBytes) {
+      if (codec != null && (codec.getId() < 1 || codec.getId() > 255)) {
+        throw new IllegalArgumentException("Codec id out of range " + codec.getId());
+      }
+      if (thresholdBytes < 0) {
+        throw new IllegalArgumentException("Negative compression threshold " + thresholdBytes);
+      }
+      this.codec = codec;
+      this.compressionThresholdBytes = thresholdBytes;
+      return this;
+    }
+
+    /**
+     * Write values with a header holding their length and CRC32C checksum, verified when they are
+     * read. A value failing it, such as one torn by a crash, fails the read with a {@link
+     * CorruptValueException}, or is a miss for {@link #CACHE}. Defaults to false, or true for
+     * {@link #CACHE}.
+     *
+     * <p>Values written before checksums were turned on are read without verification. Values
+     * written with {@link SimpleStore#openOutputStream(String)} are not checksummed.
+     */
+    public Builder setChecksummed(boolean checksummed) {
+      this.checksummed = checksummed;
+      return this;
+    }
+
+    /**
+     * Set the encoding of strings written to the namespace. Defaults to {@link
+     * StringEncoding#UTF_16BE}, which doubles the size of ASCII strings compared to {@link
+     * StringEncoding#UTF_8}.
+     *
+     * <p>Strings are read correctly whichever encoding they were written in, so the encoding may
+     * change between opens of a namespace. The one exception is described in {@link
+     * StringEncoding#UTF_8}.
+     */
+    public Builder setStringEncoding(StringEncoding stringEncoding) {
+      this.stringEncoding = stringEncoding;
+      return this;
+    }
+
+    /**
+     * Write back strings read with {@link SimpleStore#getString(String)} in the namespace's
+     * encoding when they were written in another, so a namespace migrates as it is used. A string
+     * is only rewritten if it was not changed meanwhile. Defaults to false.
+     */
+    public Builder setRewriteLegacyStrings(boolean rewriteLegacyStrings) {
+      this.rewriteLegacyStrings = rewriteLegacyStrings;
+      return this;
+    }
+
+    /**
+     * Let a proto store of the namespace keep parsed messages, so repeated reads of a key return
+     * the same message without parsing it again while its bytes stay in the memory cache. Bounded
+     * by the most heap they may hold, estimated from their serialized size. Defaults to zero,
+     * which parses on every read.
+     */
+    public Builder setMessageCacheBudgetBytes(long messageCacheBudgetBytes) {
+      if (messageCacheBudgetBytes < 0) {
+        throw new IllegalArgumentException(
+            "Negative message cache budget " + messageCacheBudgetBytes);
+      }
+      this.messageCacheBudgetBytes = messageCacheBudgetBytes;
+      return this;
+    }
+
+    public NamespaceConfig build() {
+      return new NamespaceConfig(this);
+    }
+  }
 }
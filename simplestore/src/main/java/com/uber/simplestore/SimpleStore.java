@@ -16,8 +16,14 @@
 package com.uber.simplestore;
 
 import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
 
@@ -44,12 +50,46 @@ public interface SimpleStore extends Closeable {
   /**
    * Retrieve a byte[] from disk.
    *
+   * <p>The array may be shared with the memory cache and must not be modified.
+   *
    * @param key to read from
    * @return value if present, empty array if absent
    */
   @CheckReturnValue
   ListenableFuture<byte[]> get(String key);
 
+  /**
+   * Retrieve a read-only view of a value, without copying it.
+   *
+   * @param key to read from
+   * @return value if present, empty buffer if absent
+   */
+  @CheckReturnValue
+  ListenableFuture<ByteBuffer> getBuffer(String key);
+
+  /**
+   * Open a stream of a value, read from disk as it is consumed instead of being held in memory.
+   * Values streamed from disk are not cached.
+   *
+   * <p>The stream keeps reading the value it was opened on should the key change later, unless it
+   * is overwritten in place with {@link Durability#BEST_EFFORT}. The caller must close it.
+   *
+   * @param key to read from
+   * @return stream of the value if present, empty stream if absent
+   */
+  @CheckReturnValue
+  ListenableFuture<InputStream> openInputStream(String key);
+
+  /**
+   * Retrieve a byte[] from the memory cache without waiting, if it is cached and no queued
+   * operation changes it.
+   *
+   * @param key to read from
+   * @return value if cached, empty array if cached as absent, null if not cached
+   */
+  @Nullable
+  byte[] getIfCached(String key);
+
   /**
    * Stores a byte[] on disk.
    *
@@ -59,6 +99,105 @@ public interface SimpleStore extends Closeable {
   @CheckReturnValue
   ListenableFuture<byte[]> put(String key, @Nullable byte[] value);
 
+  /**
+   * Stores the remaining bytes of a buffer on disk, taking ownership of it.
+   *
+   * <p>A heap buffer whose remaining bytes span its whole array is stored without a copy, so
+   * neither it nor its array may be modified afterwards. Other buffers are copied once.
+   *
+   * @param key to store to
+   * @param value to store, null or empty to remove
+   * @return read-only view of the stored value
+   */
+  @CheckReturnValue
+  ListenableFuture<ByteBuffer> putBuffer(String key, @Nullable ByteBuffer value);
+
+  /**
+   * Open a stream of a new value, written to disk as it goes instead of being held in memory. The
+   * value replaces the key atomically once the stream is closed, with the durability of the
+   * namespace. Closing an empty stream removes the key.
+   *
+   * @param key to store to
+   * @return stream of the new value
+   */
+  @CheckReturnValue
+  ListenableFuture<ValueOutputStream> openOutputStream(String key);
+
+  /**
+   * Stores a byte[] on disk with a durability other than the namespace's.
+   *
+   * @param key to store to
+   * @param value to store
+   * @param durability of this write
+   */
+  @CheckReturnValue
+  ListenableFuture<byte[]> put(String key, @Nullable byte[] value, Durability durability);
+
+  /**
+   * Replace the value of a key with one computed from it, as a single step of the namespace's
+   * queue, so that no other operation on the key can interleave and lose the update.
+   *
+   * <p>The function runs on the IO executor and should return quickly. It must not modify its
+   * argument, which may be shared with the memory cache. Returning the argument itself skips the
+   * write.
+   *
+   * @param key to update
+   * @param function from the current value, empty if absent, to the new one, null or empty to
+   *     remove the key
+   * @return the new value, empty array if removed
+   */
+  @CheckReturnValue
+  ListenableFuture<byte[]> update(String key, Function<byte[], byte[]> function);
+
+  /**
+   * Stores a byte[] on disk if the key currently holds an expected value, as a single step of the
+   * namespace's queue.
+   *
+   * @param key to store to
+   * @param expect current value, null or empty if the key must be absent
+   * @param update to store, null or empty to remove the key
+   * @return whether the expected value was found and replaced
+   */
+  @CheckReturnValue
+  ListenableFuture<Boolean> compareAndSet(
+      String key, @Nullable byte[] expect, @Nullable byte[] update);
+
+  /**
+   * Retrieve several byte[] from disk in a single operation.
+   *
+   * @param keys to read from
+   * @return value of every key, empty array if absent
+   */
+  @CheckReturnValue
+  ListenableFuture<Map<String, byte[]>> getAll(Collection<String> keys);
+
+  /**
+   * Stores several byte[] on disk in a single operation. A null or empty value removes its key.
+   *
+   * @param values to store by key
+   * @return when complete
+   */
+  @CheckReturnValue
+  ListenableFuture<Void> putAll(Map<String, byte[]> values);
+
+  /**
+   * Removes several keys from memory & disk in a single operation.
+   *
+   * @param keys to remove
+   * @return when complete
+   */
+  @CheckReturnValue
+  ListenableFuture<Void> removeAll(Collection<String> keys);
+
+  /**
+   * Atomically commits the puts and removals of a transaction with {@link Durability#SYNC}.
+   *
+   * @param transaction to commit
+   * @return when complete
+   */
+  @CheckReturnValue
+  ListenableFuture<Void> commit(Transaction transaction);
+
   /**
    * Removes a key from memory & disk.
    *
@@ -77,6 +216,34 @@ public interface SimpleStore extends Closeable {
   @CheckReturnValue
   ListenableFuture<Boolean> contains(String key);
 
+  /**
+   * List the keys in this direct namespace.
+   *
+   * @return keys in ascending order
+   */
+  @CheckReturnValue
+  ListenableFuture<List<String>> keys();
+
+  /**
+   * List the keys in this direct namespace that start with a prefix.
+   *
+   * @param prefix of the keys
+   * @return keys in ascending order
+   */
+  @CheckReturnValue
+  ListenableFuture<List<String>> keysWithPrefix(String prefix);
+
+  /**
+   * Read every key that starts with a prefix, one at a time in ascending order, without holding
+   * all of the values in memory.
+   *
+   * @param prefix of the keys, "" for all keys
+   * @param visitor to receive each entry on the IO executor, should return quickly
+   * @return when every entry was visited
+   */
+  @CheckReturnValue
+  ListenableFuture<Void> scan(String prefix, EntryVisitor visitor);
+
   /** Delete all keys in this direct namespace. */
   @CheckReturnValue
   ListenableFuture<Void> clear();
@@ -88,7 +255,19 @@ public interface SimpleStore extends Closeable {
   @Beta
   ListenableFuture<Void> deleteAllNow();
 
+  /** Counters of the namespace's memory cache since it was opened. */
+  CacheStats getCacheStats();
+
   /** Fails all outstanding operations then releases the memory cache. */
   @Override
   void close();
+
+  /** Receives the entries of a {@link #scan(String, EntryVisitor)}. */
+  interface EntryVisitor {
+    /**
+     * @param key of the entry
+     * @param value of the entry, never empty
+     */
+    void visit(String key, byte[] value);
+  }
 }
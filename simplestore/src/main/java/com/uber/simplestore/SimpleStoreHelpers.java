@@ -16,6 +16,8 @@
 package com.uber.simplestore;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Arrays;
+import java.util.Map;
 
 /** Useful wrappers for common storage operations. */
 public final class SimpleStoreHelpers {
@@ -28,8 +30,6 @@ public final class SimpleStoreHelpers {
    */
   @SuppressWarnings("UnusedVariable")
   public static void prefetch(SimpleStore store, String... keys) {
-    for (String key : keys) {
-      ListenableFuture<byte[]> ignored = store.get(key);
-    }
+    ListenableFuture<Map<String, byte[]>> ignored = store.getAll(Arrays.asList(keys));
   }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+/** On-disk layout used to persist the keys of a namespace. */
+public enum StorageFormat {
+  /** Every key is stored as its own atomically replaced file. */
+  FILE_PER_KEY,
+
+  /**
+   * All keys are appended as records to a single log file with an in-memory offset index.
+   *
+   * <p>Avoids a file open, close and rename per write, and one inode per key. Best suited to write
+   * heavy namespaces of small values. Space held by overwritten and removed values is reclaimed by
+   * compacting the log in the background.
+   */
+  APPEND_LOG,
+
+  /**
+   * All keys are packed into a single table file, read whole into memory when the namespace opens.
+   *
+   * <p>Opens with one read instead of a file per key, and updates that only change values in place
+   * cost one write. Best suited to namespaces of many small values that are rarely added or
+   * removed, such as the flags and counters of a {@link
+   * com.uber.simplestore.primitive.PrimitiveSimpleStore}. Adding or removing a key, or changing
+   * the length of a value, rewrites the whole table.
+   */
+  PACKED_TABLE
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * How the strings of a namespace are stored, see {@link NamespaceConfig.Builder#setStringEncoding}.
+ */
+public enum StringEncoding {
+  /** Two bytes per character, how every string was stored before UTF-8 was available. */
+  UTF_16BE,
+
+  /**
+   * One byte per ASCII character, after a byte order mark that tells it apart from UTF-16BE. Takes
+   * about half the space for mostly ASCII strings.
+   *
+   * <p>A UTF-16BE string starting with U+EFBB followed by a character from U+BF00 to U+BFFF starts
+   * with the same bytes, so it reads as UTF-8. Such strings are stored as UTF-8 whichever encoding
+   * is configured, but one stored as UTF-16BE by an earlier version is misread.
+   */
+  UTF_8;
+
+  private static final byte[] UTF_8_MARKER = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+  /**
+   * Decode a string stored in either encoding.
+   *
+   * @param value stored
+   * @return string, empty if the value is empty
+   */
+  public static String decode(byte[] value) {
+    if (of(value) == UTF_8) {
+      return new String(
+          value, UTF_8_MARKER.length, value.length - UTF_8_MARKER.length, StandardCharsets.UTF_8);
+    }
+    return new String(value, StandardCharsets.UTF_16BE);
+  }
+
+  /** The encoding a value was stored with. */
+  public static StringEncoding of(byte[] value) {
+    if (value.length < UTF_8_MARKER.length) {
+      return UTF_16BE;
+    }
+    for (int i = 0; i < UTF_8_MARKER.length; i++) {
+      if (value[i] != UTF_8_MARKER[i]) {
+        return UTF_16BE;
+      }
+    }
+    return UTF_8;
+  }
+
+  /**
+   * Encode a string.
+   *
+   * @param value to store, not empty
+   * @return value to store
+   */
+  public byte[] encode(String value) {
+    if (this == UTF_16BE) {
+      byte[] encoded = value.getBytes(StandardCharsets.UTF_16BE);
+      if (of(encoded) == UTF_16BE) {
+        return encoded;
+      }
+      // Would be mistaken for UTF-8.
+    }
+    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+    byte[] marked = new byte[UTF_8_MARKER.length + encoded.length];
+    System.arraycopy(UTF_8_MARKER, 0, marked, 0, UTF_8_MARKER.length);
+    System.arraycopy(encoded, 0, marked, UTF_8_MARKER.length, encoded.length);
+    return marked;
+  }
+}
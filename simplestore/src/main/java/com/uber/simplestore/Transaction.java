@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Puts and removals of several keys in a namespace, committed together by {@link
+ * SimpleStore#commit(Transaction)}.
+ *
+ * <p>A committed transaction is synced with a single commit record, and after a crash either all
+ * or none of its changes are present. Not thread-safe.
+ */
+public final class Transaction {
+
+  private final Map<String, byte[]> writes = new LinkedHashMap<>();
+
+  /**
+   * Stage a byte[] to store. A null or empty value removes the key.
+   *
+   * @param key to store to
+   * @param value to store
+   * @return this transaction
+   */
+  public Transaction put(String key, @Nullable byte[] value) {
+    writes.put(key, value);
+    return this;
+  }
+
+  /**
+   * Stage the removal of a key.
+   *
+   * @param key to remove
+   * @return this transaction
+   */
+  public Transaction remove(String key) {
+    writes.put(key, null);
+    return this;
+  }
+
+  /** The last staged value of every key, null for a removal. */
+  public Map<String, byte[]> getWrites() {
+    return Collections.unmodifiableMap(writes);
+  }
+}
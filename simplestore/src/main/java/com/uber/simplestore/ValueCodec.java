@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+import java.io.IOException;
+
+/**
+ * Compresses the values of a namespace, see {@link NamespaceConfig.Builder#setCompression}.
+ * Implementations must be thread-safe.
+ */
+public interface ValueCodec {
+
+  /**
+   * Identifies the codec in the header of the values it compressed, so they can be read back. From
+   * 1 to 255, where {@link DeflateCodec} uses 1. Must never change once values were written.
+   */
+  int getId();
+
+  /**
+   * Compress a value.
+   *
+   * @param value to compress
+   * @return compressed value, stored uncompressed instead if it is no smaller
+   */
+  byte[] encode(byte[] value) throws IOException;
+
+  /**
+   * Decompress a value.
+   *
+   * @param encoded buffer holding the compressed value
+   * @param offset of the compressed value in the buffer
+   * @param length of the compressed value
+   * @param decodedLength of the value once decompressed
+   * @return value
+   */
+  byte[] decode(byte[] encoded, int offset, int length, int decodedLength) throws IOException;
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.OutputStream;
+
+/**
+ * Stream of a new value of a key, written to disk as it goes instead of being held in memory. See
+ * {@link SimpleStore#openOutputStream(String)}.
+ *
+ * <p>Closing the stream enqueues the value to replace the key atomically, in order with the
+ * operations enqueued on the store before it, without waiting for it. Not thread-safe.
+ */
+public abstract class ValueOutputStream extends OutputStream {
+
+  /**
+   * Completes once the value is committed after the stream is closed. Fails if it could not be,
+   * and is cancelled if the stream was aborted.
+   */
+  public abstract ListenableFuture<Void> committed();
+
+  /** Close the stream discarding what was written, leaving the key untouched. */
+  public abstract void abort();
+}
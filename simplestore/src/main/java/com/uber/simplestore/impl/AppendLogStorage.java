@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import android.util.Log;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import com.uber.simplestore.Durability;
+import com.uber.simplestore.SimpleStoreConfig;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * Stores all keys of a namespace as records appended to a single {@link RecordLog}.
+ *
+ * <p>The log is replayed once on first use to build an in-memory index from key to value offset,
+ * after which reads are a single positional read. Writes are staged and appended together on
+ * {@link #sync()}, so a batch of writes costs a single write and data sync. The data sync is
+ * skipped when no write in the batch asked for {@link Durability#SYNC}; records are checksummed, so
+ * either way a crash can only lose a suffix of the log rather than tear a value.
+ *
+ * <p>Overwritten and removed records stay in the log as dead bytes. Once they outweigh the live
+ * records the log is compacted: live records are copied to a new file in the background at a
+ * limited rate, then the few records appended meanwhile are copied over on the ordered executor
+ * and the new file is renamed over the log.
+ */
+@SuppressWarnings("UnstableApiUsage")
+final class AppendLogStorage implements NamespaceStorage {
+
+  static final String LOG_FILE_NAME = "simplestore.log";
+  static final String COMPACTION_FILE_NAME = LOG_FILE_NAME + ".compact";
+
+  private static final String LOG_TAG = "AppendLogStorage";
+  private static final long DEFAULT_MIN_DEAD_BYTES = 64 * 1024;
+  private static final double COMPACTION_BYTES_PER_SECOND = 4 * 1024 * 1024;
+
+  private final File directory;
+  private final File logFile;
+  private final File compactionFile;
+  private final Executor orderedExecutor;
+  private final Executor compactionExecutor;
+  private final long minDeadBytes;
+
+  private RecordLog log;
+  @Nullable private Map<String, Location> index;
+  private long liveBytes;
+  // Bumped whenever the log is closed, so that a compaction started before is discarded.
+  private int generation;
+  private boolean compacting;
+  private boolean syncStaged;
+
+  /**
+   * @param directory of the namespace
+   * @param orderedExecutor the namespace's ordered executor, used to swap in compacted logs
+   */
+  AppendLogStorage(File directory, Executor orderedExecutor) {
+    this(
+        directory, orderedExecutor, SimpleStoreConfig.getIOExecutor(), DEFAULT_MIN_DEAD_BYTES);
+  }
+
+  @VisibleForTesting
+  AppendLogStorage(
+      File directory, Executor orderedExecutor, Executor compactionExecutor, long minDeadBytes) {
+    this.directory = directory;
+    this.logFile = new File(directory, LOG_FILE_NAME);
+    this.compactionFile = new File(directory, COMPACTION_FILE_NAME);
+    this.orderedExecutor = orderedExecutor;
+    this.compactionExecutor = compactionExecutor;
+    this.minDeadBytes = minDeadBytes;
+    this.log = new RecordLog(logFile);
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    Location location = loadIndex().get(key);
+    if (location == null) {
+      return null;
+    }
+    byte[] value = new byte[location.length];
+    log.readFully(ByteBuffer.wrap(value), location.valueOffset());
+    return value;
+  }
+
+  @Nullable
+  @Override
+  public Callable<byte[]> concurrentReader(String key) {
+    // Reads share the log, which compaction may replace.
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public Callable<Void> concurrentWriter(
+      String key, @Nullable byte[] value, Durability durability) {
+    // Every write appends to the one log.
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public InputStream openStream(String key) throws IOException {
+    // Values are packed in the one log, which compaction may replace.
+    byte[] value = read(key);
+    return value == null ? null : new ByteArrayInputStream(value);
+  }
+
+  @Override
+  public void commitFile(String key, File file, Durability durability) throws IOException {
+    // Copied into the log, so the value is held in memory once.
+    byte[] value = new AtomicFile(file).readFully();
+    write(key, value, durability);
+    sync();
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  @Override
+  public Set<String> keys() throws IOException {
+    return new HashSet<>(loadIndex().keySet());
+  }
+
+  @Override
+  public boolean isListable(String key) {
+    return true;
+  }
+
+  @Override
+  public void write(String key, byte[] value, Durability durability) throws IOException {
+    RecordLog openLog = openLog();
+    Map<String, Location> keys = loadIndex();
+    long offset = openLog.append(key, value);
+    Location location = new Location(offset, (int) (openLog.end() - offset), value.length);
+    Location previous = keys.put(key, location);
+    liveBytes += location.recordSize;
+    if (previous != null) {
+      liveBytes -= previous.recordSize;
+    }
+    syncStaged |= durability == Durability.SYNC;
+  }
+
+  @Override
+  public void delete(String key, Durability durability) throws IOException {
+    Map<String, Location> keys = loadIndex();
+    if (!keys.containsKey(key)) {
+      return;
+    }
+    openLog().append(key, null);
+    Location previous = keys.remove(key);
+    if (previous != null) {
+      liveBytes -= previous.recordSize;
+    }
+    syncStaged |= durability == Durability.SYNC;
+  }
+
+  @Override
+  public void sync() throws IOException {
+    if (!log.isOpen()) {
+      return;
+    }
+    try {
+      if (syncStaged) {
+        log.sync();
+      } else {
+        log.flush();
+      }
+    } catch (IOException e) {
+      // The index may point at records that were never written, rebuild it from disk.
+      close();
+      throw e;
+    } finally {
+      syncStaged = false;
+    }
+    maybeCompact();
+  }
+
+  @Override
+  public void clear() {
+    close();
+    //noinspection ResultOfMethodCallIgnored
+    logFile.delete();
+    //noinspection ResultOfMethodCallIgnored
+    compactionFile.delete();
+    //noinspection ResultOfMethodCallIgnored
+    directory.delete();
+  }
+
+  @Override
+  public void close() {
+    log.close();
+    index = null;
+    liveBytes = 0;
+    syncStaged = false;
+    generation++;
+  }
+
+  /** Bytes in the log held by overwritten or removed records. */
+  @VisibleForTesting
+  long deadBytes() {
+    return log.isOpen() ? log.end() - RecordLog.FILE_HEADER_SIZE - liveBytes : 0;
+  }
+
+  private RecordLog openLog() throws IOException {
+    if (log.isOpen()) {
+      return log;
+    }
+    if (!compacting) {
+      // Left behind by a compaction interrupted before its swap, the log itself is intact.
+      //noinspection ResultOfMethodCallIgnored
+      compactionFile.delete();
+    }
+    Map<String, Location> replayed = new HashMap<>();
+    log.open(
+        (offset, size, key, value) -> {
+          if (value == null) {
+            replayed.remove(key);
+          } else {
+            replayed.put(key, new Location(offset, size, value.remaining()));
+          }
+        });
+    index = replayed;
+    liveBytes = 0;
+    for (Location location : replayed.values()) {
+      liveBytes += location.recordSize;
+    }
+    maybeCompact();
+    return log;
+  }
+
+  private Map<String, Location> loadIndex() throws IOException {
+    if (index != null) {
+      return index;
+    }
+    if (!logFile.exists()) {
+      // Nothing written yet, avoid creating the file until the first write.
+      index = new HashMap<>();
+      return index;
+    }
+    openLog();
+    if (index == null) {
+      throw new IllegalStateException();
+    }
+    return index;
+  }
+
+  /** Start a background compaction if dead records outweigh live ones. Requires a flushed log. */
+  private void maybeCompact() {
+    long dead = deadBytes();
+    if (compacting
+        || index == null
+        || dead == 0
+        || dead < minDeadBytes
+        || dead < liveBytes) {
+      return;
+    }
+    List<Map.Entry<String, Location>> live = new ArrayList<>(index.entrySet());
+    Collections.sort(
+        live, (a, b) -> Long.compare(a.getValue().recordOffset, b.getValue().recordOffset));
+    RandomAccessFile source;
+    RandomAccessFile target;
+    try {
+      // A separate descriptor keeps the snapshot readable if the log is replaced meanwhile.
+      source = new RandomAccessFile(logFile, "r");
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Failed to open " + logFile + " for compaction", e);
+      return;
+    }
+    try {
+      target = new RandomAccessFile(compactionFile, "rw");
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Failed to open " + compactionFile, e);
+      closeQuietly(source);
+      return;
+    }
+    compacting = true;
+    int startGeneration = generation;
+    long snapshotEnd = log.end();
+    compactionExecutor.execute(
+        () -> {
+          Map<String, Location> compacted = new HashMap<>();
+          long compactedEnd;
+          try {
+            compactedEnd = copyLive(source, target, live, compacted);
+          } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to compact " + logFile, e);
+            orderedExecutor.execute(
+                () -> {
+                  compacting = false;
+                  //noinspection ResultOfMethodCallIgnored
+                  compactionFile.delete();
+                });
+            return;
+          } finally {
+            closeQuietly(source);
+            closeQuietly(target);
+          }
+          orderedExecutor.execute(
+              () -> swapIn(startGeneration, snapshotEnd, compacted, compactedEnd));
+        });
+  }
+
+  /**
+   * Copy live records of a snapshot into the compaction file, rate limited to leave IO for
+   * foreground work. Runs in the background.
+   *
+   * @return end of the compaction file
+   */
+  private static long copyLive(
+      RandomAccessFile source,
+      RandomAccessFile target,
+      List<Map.Entry<String, Location>> live,
+      Map<String, Location> into)
+      throws IOException {
+    RateLimiter budget = RateLimiter.create(COMPACTION_BYTES_PER_SECOND);
+    RecordLog.writeHeader(target);
+    FileChannel in = source.getChannel();
+    FileChannel out = target.getChannel();
+    long offset = RecordLog.FILE_HEADER_SIZE;
+    for (Map.Entry<String, Location> entry : live) {
+      Location location = entry.getValue();
+      budget.acquire(location.recordSize);
+      ByteBuffer record = ByteBuffer.allocate(location.recordSize);
+      RecordLog.readFully(in, record, location.recordOffset);
+      record.flip();
+      RecordLog.writeFully(out, record, offset);
+      into.put(entry.getKey(), location.movedTo(offset));
+      offset += location.recordSize;
+    }
+    out.force(false);
+    return offset;
+  }
+
+  /**
+   * Bring the compaction file up to date with records appended since the snapshot and rename it
+   * over the log. Runs on the ordered executor.
+   */
+  private void swapIn(
+      int startGeneration, long snapshotEnd, Map<String, Location> compacted, long compactedEnd) {
+    compacting = false;
+    Map<String, Location> currentIndex = index;
+    if (startGeneration != generation || !log.isOpen() || currentIndex == null) {
+      //noinspection ResultOfMethodCallIgnored
+      compactionFile.delete();
+      return;
+    }
+    RandomAccessFile replacement = null;
+    try {
+      replacement = new RandomAccessFile(compactionFile, "rw");
+      long tailLength = log.end() - snapshotEnd;
+      ByteBuffer tail = ByteBuffer.allocate((int) tailLength);
+      log.readFully(tail, snapshotEnd);
+      tail.flip();
+      RecordLog.writeFully(replacement.getChannel(), tail, compactedEnd);
+      replacement.getChannel().force(false);
+
+      Map<String, Location> swapped = new HashMap<>();
+      for (Map.Entry<String, Location> entry : currentIndex.entrySet()) {
+        Location location = entry.getValue();
+        Location moved;
+        if (location.recordOffset >= snapshotEnd) {
+          moved = location.movedTo(compactedEnd + location.recordOffset - snapshotEnd);
+        } else {
+          moved = compacted.get(entry.getKey());
+        }
+        if (moved == null) {
+          throw new IOException("Compaction snapshot is missing " + entry.getKey());
+        }
+        swapped.put(entry.getKey(), moved);
+      }
+      if (!compactionFile.renameTo(logFile)) {
+        throw new IOException("Failed to rename " + compactionFile);
+      }
+      log.close();
+      log = new RecordLog(logFile, replacement, compactedEnd + tailLength);
+      index = swapped;
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Failed to swap in compacted " + logFile, e);
+      closeQuietly(replacement);
+      //noinspection ResultOfMethodCallIgnored
+      compactionFile.delete();
+    }
+  }
+
+  private void closeQuietly(@Nullable RandomAccessFile toClose) {
+    if (toClose == null) {
+      return;
+    }
+    try {
+      toClose.close();
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Failed to close " + logFile);
+    }
+  }
+
+  /** Position of a live record in the log. */
+  private static final class Location {
+    final long recordOffset;
+    final int recordSize;
+    final int length;
+
+    Location(long recordOffset, int recordSize, int length) {
+      this.recordOffset = recordOffset;
+      this.recordSize = recordSize;
+      this.length = length;
+    }
+
+    long valueOffset() {
+      return recordOffset + recordSize - length;
+    }
+
+    Location movedTo(long newRecordOffset) {
+      return new Location(newRecordOffset, recordSize, length);
+    }
+  }
+}
@@ -111,10 +111,23 @@ final class AtomicFile {
    * atomic file will return the new file stream.
    */
   public void finishWrite(@Nullable FileOutputStream str) {
+    finishWrite(str, true);
+  }
+
+  /**
+   * Like {@link #finishWrite(FileOutputStream)}, but without syncing the new data before it is
+   * renamed into place. Only use when the data can be recovered from elsewhere after a crash, such
+   * as a write-ahead journal.
+   */
+  public void finishWriteWithoutSync(@Nullable FileOutputStream str) {
+    finishWrite(str, false);
+  }
+
+  private void finishWrite(@Nullable FileOutputStream str, boolean sync) {
     if (str == null) {
       return;
     }
-    if (!sync(str)) {
+    if (sync && !sync(str)) {
       Log.e(LOG_TAG, "Failed to sync file output stream");
     }
     try {
@@ -125,6 +138,62 @@ final class AtomicFile {
     rename(mNewName, mBaseName);
   }
 
+  /**
+   * Replace the contents of the base file in place, without a rename or sync. A crash during the
+   * write may leave the file torn, so only use for data which can be regenerated.
+   */
+  public void overwrite(byte[] data) throws IOException {
+    if (mLegacyBackupName.exists()) {
+      rename(mLegacyBackupName, mBaseName);
+    }
+    mNewName.delete();
+    FileOutputStream str;
+    try {
+      str = new FileOutputStream(mBaseName);
+    } catch (FileNotFoundException e) {
+      File parent = mBaseName.getParentFile();
+      if (!parent.mkdirs()) {
+        throw new IOException("Failed to create directory for " + mBaseName);
+      }
+      str = new FileOutputStream(mBaseName);
+    }
+    try {
+      str.write(data);
+    } finally {
+      str.close();
+    }
+  }
+
+  /**
+   * Replace the base file with a complete file written elsewhere on the same filesystem, such as
+   * one streamed to disk. The file is renamed into place, so it must already be synced if needed.
+   */
+  public void replaceWith(File source) throws IOException {
+    mLegacyBackupName.delete();
+    mNewName.delete();
+    File parent = mBaseName.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Failed to create directory for " + mBaseName);
+    }
+    if (mBaseName.isDirectory() && !mBaseName.delete()) {
+      throw new IOException("Failed to delete directory " + mBaseName);
+    }
+    if (!source.renameTo(mBaseName)) {
+      throw new IOException("Failed to rename " + source + " to " + mBaseName);
+    }
+  }
+
+  /**
+   * Like {@link #replaceWith(File)}, but never creates the parent directory, for a source written
+   * inside it. Fails if the directory no longer holds the source.
+   */
+  public void replaceWithin(File source) throws IOException {
+    mLegacyBackupName.delete();
+    if (!source.renameTo(mBaseName)) {
+      throw new IOException("Failed to rename " + source + " to " + mBaseName);
+    }
+  }
+
   /**
    * Call when you have failed for some reason at writing to the stream returned by {@link
    * #startWrite()}. This will close the current write stream, and delete the new file.
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import android.util.Log;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.uber.simplestore.CorruptValueException;
+import com.uber.simplestore.Durability;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * Verifies the values of another storage against a checksum, see {@link
+ * com.uber.simplestore.NamespaceConfig.Builder#setChecksummed}.
+ *
+ * <p>A checksummed value starts with a header: a magic number, its length and the CRC32C of the
+ * value. Values without the magic number are read unverified, so values written before checksums
+ * were turned on stay readable. A value written unverified that starts like the magic number is
+ * checksummed anyway, so it is never mistaken for a checksummed one, and so is a streamed value.
+ * Other streamed values are not checksummed, as they are not held in memory. The namespace is
+ * marked as holding checksummed values, see {@link LayerMarker}.
+ */
+final class ChecksummingStorage implements NamespaceStorage {
+
+  static final String MARKER_FILE_NAME = ".simplestore-checksums";
+  private static final String LOG_TAG = "ChecksummingStorage";
+  private static final byte[] MAGIC = {(byte) 0xF5, (byte) 0xC1, (byte) 0x43};
+  static final int HEADER_BYTES = MAGIC.length + 4 + 4;
+
+  private final NamespaceStorage storage;
+  private final boolean checksummed;
+  private final boolean corruptionIsMiss;
+  private final LayerMarker marker;
+
+  /**
+   * @param storage to verify
+   * @param directory of the namespace
+   * @param checksummed whether to checksum every value written
+   * @param corruptionIsMiss whether a value failing its checksum reads as absent instead of failing
+   */
+  ChecksummingStorage(
+      NamespaceStorage storage, File directory, boolean checksummed, boolean corruptionIsMiss) {
+    this.storage = storage;
+    this.checksummed = checksummed;
+    this.corruptionIsMiss = corruptionIsMiss;
+    // A torn header may be as short as one byte.
+    this.marker = new LayerMarker(storage, directory, MARKER_FILE_NAME, MAGIC, 1, this::frame);
+  }
+
+  /** Whether a namespace directory holds values written through this layer. */
+  static boolean isMarked(File directory) {
+    return LayerMarker.isMarked(directory, MARKER_FILE_NAME);
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    marker.check();
+    return verify(key, storage.read(key));
+  }
+
+  @Nullable
+  @Override
+  public Callable<byte[]> concurrentReader(String key) throws IOException {
+    marker.check();
+    Callable<byte[]> reader = storage.concurrentReader(key);
+    if (reader == null) {
+      return null;
+    }
+    return () -> verify(key, reader.call());
+  }
+
+  @Nullable
+  @Override
+  public Callable<Void> concurrentWriter(
+      String key, @Nullable byte[] value, Durability durability) throws IOException {
+    if (value == null) {
+      return storage.concurrentWriter(key, null, durability);
+    }
+    marker.markBeforeWrite();
+    return storage.concurrentWriter(key, frame(value), durability);
+  }
+
+  @Nullable
+  @Override
+  public InputStream openStream(String key) throws IOException {
+    marker.check();
+    InputStream stream = storage.openStream(key);
+    if (stream == null) {
+      return null;
+    }
+    PushbackInputStream in = new PushbackInputStream(stream, MAGIC.length);
+    byte[] magic = new byte[MAGIC.length];
+    int read = ByteStreams.read(in, magic, 0, magic.length);
+    if (read == MAGIC.length && !hasMagic(magic)) {
+      in.unread(magic, 0, read);
+      return in;
+    }
+    // Only values written from memory, or streamed ones starting like the magic number, are
+    // checksummed. Rare enough for the latter to be read whole.
+    byte[] value;
+    try {
+      byte[] rest = ByteStreams.toByteArray(in);
+      value = Arrays.copyOf(magic, read + rest.length);
+      System.arraycopy(rest, 0, value, read, rest.length);
+    } finally {
+      in.close();
+    }
+    value = verify(key, value);
+    return value == null ? null : new ByteArrayInputStream(value);
+  }
+
+  @Override
+  public void commitFile(String key, File file, Durability durability) throws IOException {
+    marker.markBeforeWrite();
+    if (!marker.startsLikeHeader(file)) {
+      storage.commitFile(key, file, durability);
+      return;
+    }
+    storage.write(key, frame(new AtomicFile(file).readFully()), durability);
+    storage.sync();
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  @Override
+  public Set<String> keys() throws IOException {
+    marker.check();
+    return storage.keys();
+  }
+
+  @Override
+  public boolean isListable(String key) {
+    return storage.isListable(key);
+  }
+
+  @Override
+  public void write(String key, byte[] value, Durability durability) throws IOException {
+    marker.markBeforeWrite();
+    storage.write(key, frame(value), durability);
+  }
+
+  @Override
+  public void delete(String key, Durability durability) throws IOException {
+    storage.delete(key, durability);
+  }
+
+  @Override
+  public void sync() throws IOException {
+    storage.sync();
+  }
+
+  @Override
+  public void clear() throws IOException {
+    storage.clear();
+    marker.reset();
+  }
+
+  @Override
+  public void close() {
+    storage.close();
+    marker.reset();
+  }
+
+  private byte[] frame(byte[] value) {
+    if (!checksummed && !hasMagic(value) && !isTornMagic(value)) {
+      return value;
+    }
+    byte[] framed = new byte[HEADER_BYTES + value.length];
+    System.arraycopy(MAGIC, 0, framed, 0, MAGIC.length);
+    writeInt(framed, MAGIC.length, value.length);
+    writeInt(framed, MAGIC.length + 4, checksum(value, 0, value.length));
+    System.arraycopy(value, 0, framed, HEADER_BYTES, value.length);
+    return framed;
+  }
+
+  /** Strip the header of a value after verifying it. */
+  @Nullable
+  private byte[] verify(String key, @Nullable byte[] value) throws IOException {
+    if (value == null) {
+      return null;
+    }
+    if (!hasMagic(value)) {
+      if (checksummed && isTornMagic(value)) {
+        return corrupt(key, "Truncated header");
+      }
+      return value;
+    }
+    if (value.length < HEADER_BYTES) {
+      return corrupt(key, "Truncated header");
+    }
+    int length = readInt(value, MAGIC.length);
+    if (length != value.length - HEADER_BYTES) {
+      int actual = value.length - HEADER_BYTES;
+      return corrupt(key, "Value is " + actual + " bytes, expected " + length);
+    }
+    if (readInt(value, MAGIC.length + 4) != checksum(value, HEADER_BYTES, length)) {
+      return corrupt(key, "Checksum mismatch");
+    }
+    return Arrays.copyOfRange(value, HEADER_BYTES, value.length);
+  }
+
+  @Nullable
+  private byte[] corrupt(String key, String reason) throws CorruptValueException {
+    String message = reason + " reading " + key;
+    if (corruptionIsMiss) {
+      Log.w(LOG_TAG, message);
+      return null;
+    }
+    throw new CorruptValueException(message);
+  }
+
+  private static boolean hasMagic(byte[] value) {
+    return value.length >= MAGIC.length && isMagicPrefix(value, MAGIC.length);
+  }
+
+  /** Whether a value is what is left of a checksummed one torn within its magic number. */
+  private static boolean isTornMagic(byte[] value) {
+    return value.length > 0 && value.length < MAGIC.length && isMagicPrefix(value, value.length);
+  }
+
+  private static boolean isMagicPrefix(byte[] value, int length) {
+    for (int i = 0; i < length; i++) {
+      if (value[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int checksum(byte[] value, int offset, int length) {
+    return Hashing.crc32c().hashBytes(value, offset, length).asInt();
+  }
+
+  private static int readInt(byte[] buffer, int offset) {
+    return ((buffer[offset] & 0xFF) << 24)
+        | ((buffer[offset + 1] & 0xFF) << 16)
+        | ((buffer[offset + 2] & 0xFF) << 8)
+        | (buffer[offset + 3] & 0xFF);
+  }
+
+  private static void writeInt(byte[] buffer, int offset, int value) {
+    buffer[offset] = (byte) (value >>> 24);
+    buffer[offset + 1] = (byte) (value >>> 16);
+    buffer[offset + 2] = (byte) (value >>> 8);
+    buffer[offset + 3] = (byte) value;
+  }
+}
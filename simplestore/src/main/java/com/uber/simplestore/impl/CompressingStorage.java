@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import android.util.Log;
+import com.google.common.io.ByteStreams;
+import com.uber.simplestore.CorruptValueException;
+import com.uber.simplestore.DeflateCodec;
+import com.uber.simplestore.Durability;
+import com.uber.simplestore.ValueCodec;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * Compresses the values of another storage, see {@link
+ * com.uber.simplestore.NamespaceConfig.Builder#setCompression}.
+ *
+ * <p>A compressed value starts with a header: a magic number, the id of its codec and its length
+ * once decompressed. Values without the magic number are read as they are, so values written
+ * before compression was turned on stay readable. A value written as is that happens to start with
+ * the magic number is given a header too, with the id reserved for stored values, so it is never
+ * mistaken for a compressed one, and so is a streamed value. No UTF-8 text starts with the magic
+ * number. The namespace is marked as holding values with a header, see {@link LayerMarker}.
+ *
+ * <p>A value failing to decompress fails its read with a {@link CorruptValueException}, or reads
+ * as absent in a namespace that may lose values.
+ */
+final class CompressingStorage implements NamespaceStorage {
+
+  static final String MARKER_FILE_NAME = ".simplestore-compressed";
+  private static final String LOG_TAG = "CompressingStorage";
+  private static final byte[] MAGIC = {(byte) 0xF5, (byte) 0xC0, (byte) 0x53};
+  static final int HEADER_BYTES = MAGIC.length + 1 + 4;
+  // Codec id of values stored as is behind a header.
+  private static final int STORED_ID = 0;
+
+  private final NamespaceStorage storage;
+  @Nullable private final ValueCodec codec;
+  private final int thresholdBytes;
+  private final boolean corruptionIsMiss;
+  // Reads values compressed without a dictionary once another codec is configured.
+  private final ValueCodec deflate = new DeflateCodec();
+  private final LayerMarker marker;
+
+  /**
+   * @param storage to compress
+   * @param directory of the namespace
+   * @param codec compressing values written, or null to only read compressed values
+   * @param thresholdBytes shortest value to compress
+   * @param corruptionIsMiss whether a value failing to decompress reads as absent instead of
+   *     failing
+   */
+  CompressingStorage(
+      NamespaceStorage storage,
+      File directory,
+      @Nullable ValueCodec codec,
+      int thresholdBytes,
+      boolean corruptionIsMiss) {
+    this.storage = storage;
+    this.codec = codec;
+    this.thresholdBytes = thresholdBytes;
+    this.corruptionIsMiss = corruptionIsMiss;
+    this.marker =
+        new LayerMarker(storage, directory, MARKER_FILE_NAME, MAGIC, MAGIC.length, this::encode);
+  }
+
+  /** Whether a namespace directory holds values written through this layer. */
+  static boolean isMarked(File directory) {
+    return LayerMarker.isMarked(directory, MARKER_FILE_NAME);
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    marker.check();
+    return decode(key, storage.read(key));
+  }
+
+  @Nullable
+  @Override
+  public Callable<byte[]> concurrentReader(String key) throws IOException {
+    marker.check();
+    Callable<byte[]> reader = storage.concurrentReader(key);
+    if (reader == null) {
+      return null;
+    }
+    return () -> decode(key, reader.call());
+  }
+
+  @Nullable
+  @Override
+  public Callable<Void> concurrentWriter(
+      String key, @Nullable byte[] value, Durability durability) throws IOException {
+    if (value == null) {
+      return storage.concurrentWriter(key, null, durability);
+    }
+    marker.markBeforeWrite();
+    return storage.concurrentWriter(key, encode(value), durability);
+  }
+
+  @Nullable
+  @Override
+  public InputStream openStream(String key) throws IOException {
+    marker.check();
+    InputStream stream = storage.openStream(key);
+    if (stream == null) {
+      return null;
+    }
+    PushbackInputStream in = new PushbackInputStream(stream, MAGIC.length);
+    byte[] magic = new byte[MAGIC.length];
+    int read = ByteStreams.read(in, magic, 0, magic.length);
+    if (read < MAGIC.length || !Arrays.equals(magic, MAGIC)) {
+      in.unread(magic, 0, read);
+      return in;
+    }
+    // Only values written from memory, or streamed ones starting with the magic number, have a
+    // header. Rare enough for the latter to be read whole.
+    byte[] value;
+    try {
+      byte[] rest = ByteStreams.toByteArray(in);
+      value = Arrays.copyOf(magic, MAGIC.length + rest.length);
+      System.arraycopy(rest, 0, value, MAGIC.length, rest.length);
+    } finally {
+      in.close();
+    }
+    byte[] decoded = decode(key, value);
+    return decoded == null ? null : new ByteArrayInputStream(decoded);
+  }
+
+  @Override
+  public void commitFile(String key, File file, Durability durability) throws IOException {
+    marker.markBeforeWrite();
+    if (!marker.startsLikeHeader(file)) {
+      storage.commitFile(key, file, durability);
+      return;
+    }
+    storage.write(key, encode(new AtomicFile(file).readFully()), durability);
+    storage.sync();
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  @Override
+  public Set<String> keys() throws IOException {
+    marker.check();
+    return storage.keys();
+  }
+
+  @Override
+  public boolean isListable(String key) {
+    return storage.isListable(key);
+  }
+
+  @Override
+  public void write(String key, byte[] value, Durability durability) throws IOException {
+    marker.markBeforeWrite();
+    storage.write(key, encode(value), durability);
+  }
+
+  @Override
+  public void delete(String key, Durability durability) throws IOException {
+    storage.delete(key, durability);
+  }
+
+  @Override
+  public void sync() throws IOException {
+    storage.sync();
+  }
+
+  @Override
+  public void clear() throws IOException {
+    storage.clear();
+    marker.reset();
+  }
+
+  @Override
+  public void close() {
+    storage.close();
+    marker.reset();
+  }
+
+  private byte[] encode(byte[] value) throws IOException {
+    ValueCodec codec = this.codec;
+    if (codec != null && value.length >= thresholdBytes) {
+      byte[] encoded = codec.encode(value);
+      if (encoded.length + HEADER_BYTES < value.length) {
+        return frame(codec.getId(), value.length, encoded);
+      }
+    }
+    if (hasMagic(value)) {
+      return frame(STORED_ID, value.length, value);
+    }
+    return value;
+  }
+
+  @Nullable
+  private byte[] decode(String key, @Nullable byte[] value) throws IOException {
+    if (value == null || !hasMagic(value)) {
+      return value;
+    }
+    if (value.length < HEADER_BYTES) {
+      return corrupt(key, "Truncated header");
+    }
+    int id = value[MAGIC.length] & 0xFF;
+    int length =
+        ((value[MAGIC.length + 1] & 0xFF) << 24)
+            | ((value[MAGIC.length + 2] & 0xFF) << 16)
+            | ((value[MAGIC.length + 3] & 0xFF) << 8)
+            | (value[MAGIC.length + 4] & 0xFF);
+    if (id == STORED_ID) {
+      if (length != value.length - HEADER_BYTES) {
+        return corrupt(key, "Stored value is " + (value.length - HEADER_BYTES) + " bytes");
+      }
+      return Arrays.copyOfRange(value, HEADER_BYTES, value.length);
+    }
+    ValueCodec codec = this.codec;
+    if (codec == null || codec.getId() != id) {
+      codec = id == deflate.getId() ? deflate : null;
+    }
+    if (codec == null) {
+      return corrupt(key, "Value compressed with unknown codec " + id);
+    }
+    try {
+      return codec.decode(value, HEADER_BYTES, value.length - HEADER_BYTES, length);
+    } catch (IOException e) {
+      return corrupt(key, "Failed to decompress: " + e.getMessage());
+    }
+  }
+
+  @Nullable
+  private byte[] corrupt(String key, String reason) throws CorruptValueException {
+    String message = reason + " reading " + key;
+    if (corruptionIsMiss) {
+      Log.w(LOG_TAG, message);
+      return null;
+    }
+    throw new CorruptValueException(message);
+  }
+
+  private static byte[] frame(int id, int length, byte[] payload) {
+    byte[] framed = new byte[HEADER_BYTES + payload.length];
+    System.arraycopy(MAGIC, 0, framed, 0, MAGIC.length);
+    framed[MAGIC.length] = (byte) id;
+    framed[MAGIC.length + 1] = (byte) (length >>> 24);
+    framed[MAGIC.length + 2] = (byte) (length >>> 16);
+    framed[MAGIC.length + 3] = (byte) (length >>> 8);
+    framed[MAGIC.length + 4] = (byte) length;
+    System.arraycopy(payload, 0, framed, HEADER_BYTES, payload.length);
+    return framed;
+  }
+
+  private static boolean hasMagic(byte[] value) {
+    if (value.length < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (value[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
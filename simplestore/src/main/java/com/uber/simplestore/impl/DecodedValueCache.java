@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import androidx.annotation.RestrictTo;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Completed reads of values decoded from the bytes a namespace's memory cache holds, such as the
+ * primitives of a {@link com.uber.simplestore.primitive.PrimitiveSimpleStore} or parsed messages.
+ * A value is only served while {@link com.uber.simplestore.SimpleStore#getIfCached(String)} returns
+ * the exact bytes it was decoded from, so any write to the key invalidates it.
+ *
+ * <p>Values are cached per key and decoder, compared by identity, so reading a key with several
+ * decoders keeps each value. Bounded by a byte budget estimated from the size of those bytes, with
+ * least recently used eviction of keys. Every cache is trimmed along with the memory caches by
+ * {@link SimpleStoreFactory#onTrimMemory(int)}, as its values keep their bytes reachable.
+ *
+ * <p>Only public for the primitive and proto stores, not part of the API.
+ *
+ * <p>Thread-safe.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public final class DecodedValueCache {
+
+  // Rough heap cost of a key besides its characters and bytes: the map node, the entry, the key
+  // string and the list.
+  static final int ENTRY_OVERHEAD_BYTES = 96;
+  // Rough heap cost of each value of a key: the holder and the completed future.
+  static final int VALUE_OVERHEAD_BYTES = 32;
+
+  // Every cache still reachable, to trim on memory pressure.
+  private static final Set<DecodedValueCache> caches =
+      Collections.newSetFromMap(new WeakHashMap<>());
+
+  private final long budgetBytes;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeBytes;
+
+  public DecodedValueCache(long budgetBytes) {
+    this.budgetBytes = budgetBytes;
+    synchronized (caches) {
+      caches.add(this);
+    }
+  }
+
+  /**
+   * Evict least recently used keys of every cache until each holds at most the given fraction of
+   * its current size.
+   */
+  static void trimAll(float retainFraction) {
+    List<DecodedValueCache> trimmed;
+    synchronized (caches) {
+      trimmed = new ArrayList<>(caches);
+    }
+    for (DecodedValueCache cache : trimmed) {
+      cache.trimToSize(retainFraction);
+    }
+  }
+
+  /**
+   * Get the completed read of a value decoded from bytes by a decoder.
+   *
+   * @param key of the value
+   * @param source bytes of the key in the memory cache
+   * @param decoder the value was decoded with
+   * @return read, or null if not cached
+   */
+  @Nullable
+  public synchronized <T> ListenableFuture<T> get(String key, byte[] source, Object decoder) {
+    Entry entry = entries.get(key);
+    if (entry == null || entry.source != source) {
+      return null;
+    }
+    for (Decoded decoded : entry.values) {
+      if (decoded.decoder == decoder) {
+        @SuppressWarnings("unchecked")
+        ListenableFuture<T> value = (ListenableFuture<T>) decoded.value;
+        return value;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Cache the completed read of a value decoded from bytes by a decoder. Values decoded from other
+   * bytes of the key are dropped.
+   */
+  public synchronized <T> void put(
+      String key, byte[] source, Object decoder, ListenableFuture<T> value) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      sizeBytes -= entry.weight;
+    }
+    if (entry == null || entry.source != source) {
+      entry = new Entry(source, ENTRY_OVERHEAD_BYTES + 2L * key.length() + source.length);
+    }
+    entry.put(decoder, value);
+    if (entry.weight > budgetBytes) {
+      return;
+    }
+    entries.put(key, entry);
+    sizeBytes += entry.weight;
+    evictToSize(budgetBytes);
+  }
+
+  /** Drop the values of a key, such as once its bytes left the memory cache. */
+  public synchronized void remove(String key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      sizeBytes -= entry.weight;
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    sizeBytes = 0;
+  }
+
+  synchronized long sizeBytes() {
+    return sizeBytes;
+  }
+
+  private synchronized void trimToSize(float retainFraction) {
+    evictToSize((long) (sizeBytes * retainFraction));
+  }
+
+  private void evictToSize(long maxBytes) {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (sizeBytes > maxBytes && iterator.hasNext()) {
+      sizeBytes -= iterator.next().weight;
+      iterator.remove();
+    }
+  }
+
+  /** The values decoded from the bytes of a key. */
+  private static final class Entry {
+    final byte[] source;
+    // One per decoder, rarely more than one.
+    final List<Decoded> values = new ArrayList<>(1);
+    long weight;
+
+    Entry(byte[] source, long weight) {
+      this.source = source;
+      this.weight = weight;
+    }
+
+    void put(Object decoder, ListenableFuture<?> value) {
+      for (int i = 0; i < values.size(); i++) {
+        if (values.get(i).decoder == decoder) {
+          values.set(i, new Decoded(decoder, value));
+          return;
+        }
+      }
+      values.add(new Decoded(decoder, value));
+      // Decoded values take at least as much heap as the bytes they were decoded from.
+      weight += VALUE_OVERHEAD_BYTES + (values.size() > 1 ? source.length : 0);
+    }
+  }
+
+  private static final class Decoded {
+    final Object decoder;
+    final ListenableFuture<?> value;
+
+    Decoded(Object decoder, ListenableFuture<?> value) {
+      this.decoder = decoder;
+      this.value = value;
+    }
+  }
+}
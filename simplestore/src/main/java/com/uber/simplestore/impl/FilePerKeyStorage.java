@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import android.util.Log;
+import com.google.common.annotations.VisibleForTesting;
+import com.uber.simplestore.Durability;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * Stores every key as its own {@link AtomicFile} inside the namespace directory.
+ *
+ * <p>A sync of a single write uses a regular synced {@link AtomicFile} write. A sync of several
+ * writes instead appends them all to a write-ahead journal as one group with a single data sync,
+ * which commits them atomically, then replaces the key files without syncing each of them. Should a
+ * crash lose any of those files, or leave only some of them replaced, the journal is replayed over
+ * them on next use. Once the journal grows large, or the storage is closed, the
+ * key files are synced and the journal is emptied.
+ *
+ * <p>Writes which don't require {@link Durability#SYNC} bypass the journal. {@link
+ * Durability#ATOMIC} writes replace the key file without syncing it, and {@link
+ * Durability#BEST_EFFORT} writes overwrite it in place. Such a write to a key with a record in the
+ * journal first checkpoints it, unless it shares a batch with a synced write to the key.
+ *
+ * <p>Key files may also be written concurrently, each one synced on its own as required by its
+ * durability.
+ *
+ * <p>Values read while the namespace starts up are packed into a {@link StartupSnapshot}, which
+ * serves the same reads on next launch without opening their key files.
+ *
+ * <p>Keys named like unfinished writes, backups or bookkeeping files are stored in a file named
+ * with an escape suffix, so they are listed as themselves.
+ */
+final class FilePerKeyStorage implements NamespaceStorage {
+
+  static final String JOURNAL_FILE_NAME = ".simplestore-journal";
+
+  private static final String LOG_TAG = "FilePerKeyStorage";
+  private static final String NEW_SUFFIX = ".new";
+  private static final String BACKUP_SUFFIX = ".bak";
+  private static final String ESCAPED_SUFFIX = ".simplestore-key";
+  private static final long CHECKPOINT_BYTES = 512 * 1024;
+
+  private final File directory;
+  private final RecordLog journal;
+  private final StartupSnapshot snapshot;
+  private final List<StagedWrite> staged = new ArrayList<>();
+  // Keys with records in the journal, whose files may not be synced yet.
+  private final Set<String> journaled = new HashSet<>();
+  private boolean recovered;
+
+  FilePerKeyStorage(File directory) {
+    this(directory, StartupSnapshot.WINDOW_MILLIS);
+  }
+
+  @VisibleForTesting
+  FilePerKeyStorage(File directory, long startupWindowMillis) {
+    this.directory = directory;
+    this.journal = new RecordLog(new File(directory, JOURNAL_FILE_NAME));
+    this.snapshot = new StartupSnapshot(directory, startupWindowMillis);
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    recover();
+    snapshot.writeIfWindowEnded();
+    byte[] value = snapshot.get(key);
+    if (value != null) {
+      return value;
+    }
+    return readFile(key);
+  }
+
+  @Override
+  public Callable<byte[]> concurrentReader(String key) throws IOException {
+    // Files are only replaced by renames once the journal is recovered.
+    recover();
+    byte[] value = snapshot.get(key);
+    if (value != null) {
+      return () -> value;
+    }
+    return () -> readFile(key);
+  }
+
+  @Override
+  public Callable<Void> concurrentWriter(
+      String key, @Nullable byte[] value, Durability durability) throws IOException {
+    recover();
+    if (journaled.contains(key)) {
+      // The journal record of the key would be replayed over the write after a crash.
+      checkpoint();
+    }
+    snapshot.invalidate(key);
+    StagedWrite write = new StagedWrite(key, value, durability);
+    return () -> {
+      apply(write, durability == Durability.SYNC);
+      return null;
+    };
+  }
+
+  @Nullable
+  @Override
+  public InputStream openStream(String key) throws IOException {
+    recover();
+    byte[] value = snapshot.get(key);
+    if (value != null) {
+      return new ByteArrayInputStream(value);
+    }
+    try {
+      return new AtomicFile(keyFile(directory, key)).openRead();
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void commitFile(String key, File file, Durability durability) throws IOException {
+    recover();
+    if (journaled.contains(key)) {
+      // The journal record of the key would be replayed over the file after a crash.
+      checkpoint();
+    }
+    snapshot.invalidate(key);
+    new AtomicFile(keyFile(directory, key)).replaceWith(file);
+  }
+
+  @Override
+  public Set<String> keys() throws IOException {
+    recover();
+    Set<String> keys = new HashSet<>();
+    String[] names = directory.list();
+    if (names == null) {
+      return keys;
+    }
+    for (String name : names) {
+      if (name.endsWith(NEW_SUFFIX) || isBookkeeping(name)) {
+        // Unfinished write or bookkeeping, not a key.
+        continue;
+      }
+      File file = new File(directory, name);
+      if (!file.isFile()) {
+        // Child namespace.
+        continue;
+      }
+      if (name.endsWith(BACKUP_SUFFIX)) {
+        String base = name.substring(0, name.length() - BACKUP_SUFFIX.length());
+        if (!isBookkeeping(base) && !new File(directory, base).exists()) {
+          // Left by an interrupted write, reads restore the key from it.
+          keys.add(keyOf(base));
+        }
+      } else {
+        keys.add(keyOf(name));
+      }
+    }
+    return keys;
+  }
+
+  @Override
+  public boolean isListable(String key) {
+    // Keys with a separator are stored under a child namespace's directory.
+    return key.indexOf('/') < 0;
+  }
+
+  /** Get the file a key is stored in. */
+  static File keyFile(File directory, String key) {
+    if (key.endsWith(NEW_SUFFIX)
+        || key.endsWith(BACKUP_SUFFIX)
+        || key.endsWith(ESCAPED_SUFFIX)
+        || isBookkeeping(key.substring(key.lastIndexOf('/') + 1))) {
+      return new File(directory, key + ESCAPED_SUFFIX);
+    }
+    return new File(directory, key);
+  }
+
+  @Override
+  public void write(String key, byte[] value, Durability durability) throws IOException {
+    recover();
+    checkpointIfJournaled(key, durability);
+    snapshot.invalidate(key);
+    staged.add(new StagedWrite(key, value, durability));
+  }
+
+  @Override
+  public void delete(String key, Durability durability) throws IOException {
+    recover();
+    checkpointIfJournaled(key, durability);
+    snapshot.invalidate(key);
+    staged.add(new StagedWrite(key, null, durability));
+  }
+
+  @Override
+  public void sync() throws IOException {
+    if (staged.isEmpty()) {
+      return;
+    }
+    List<StagedWrite> writes = new ArrayList<>(staged);
+    staged.clear();
+    Set<String> syncedKeys = new HashSet<>();
+    for (StagedWrite write : writes) {
+      if (write.durability == Durability.SYNC) {
+        syncedKeys.add(write.key);
+      }
+    }
+    if (syncedKeys.isEmpty()) {
+      applyAll(writes, null);
+      return;
+    }
+    // Later writes to a synced key are journaled too, or replay would undo them.
+    List<StagedWrite> synced = new ArrayList<>();
+    for (StagedWrite write : writes) {
+      if (syncedKeys.contains(write.key)) {
+        synced.add(write);
+      }
+    }
+    StagedWrite first = synced.get(0);
+    if (synced.size() == 1 && !journaled.contains(first.key)) {
+      // An older journal record for the key would be replayed over this write after a crash.
+      applyAll(writes, first);
+      return;
+    }
+
+    if (!journal.isOpen()) {
+      journal.open(null);
+    }
+    for (StagedWrite write : synced) {
+      journal.append(write.key, write.value);
+    }
+    journal.sync();
+    for (StagedWrite write : synced) {
+      journaled.add(write.key);
+    }
+    try {
+      applyAll(writes, null);
+    } catch (IOException e) {
+      // Committed to the journal, replay it before the next operation.
+      recovered = false;
+      journal.close();
+      throw e;
+    }
+    if (journal.end() >= CHECKPOINT_BYTES) {
+      try {
+        checkpoint();
+      } catch (IOException e) {
+        Log.e(LOG_TAG, "Failed to checkpoint " + directory, e);
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    snapshot.clear();
+    staged.clear();
+    journaled.clear();
+    journal.close();
+    File[] files = directory.listFiles(File::isFile);
+    if (files != null && files.length > 0) {
+      for (File f : files) {
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    directory.delete();
+  }
+
+  @Override
+  public void close() {
+    snapshot.write();
+    staged.clear();
+    if (journal.isOpen()) {
+      try {
+        checkpoint();
+      } catch (IOException e) {
+        Log.e(LOG_TAG, "Failed to checkpoint " + directory, e);
+      }
+    }
+    journaled.clear();
+    journal.close();
+    recovered = false;
+  }
+
+  /** Replay a journal left behind by a crash or failed sync over the key files. */
+  private void recover() throws IOException {
+    if (recovered) {
+      return;
+    }
+    if (journal.getFile().exists()) {
+      List<StagedWrite> writes = new ArrayList<>();
+      if (!journal.isOpen()) {
+        journal.open(
+            (offset, size, key, value) ->
+                writes.add(new StagedWrite(key, copyOf(value), Durability.SYNC)));
+      }
+      if (!writes.isEmpty()) {
+        for (StagedWrite write : writes) {
+          apply(write, false);
+          journaled.add(write.key);
+        }
+        checkpoint();
+      }
+    }
+    recovered = true;
+  }
+
+  /**
+   * Checkpoint before a write that skips the journal replaces a journaled key, or replaying the
+   * journal after a crash would undo the write.
+   */
+  private void checkpointIfJournaled(String key, Durability durability) throws IOException {
+    if (durability != Durability.SYNC && journaled.contains(key)) {
+      checkpoint();
+    }
+  }
+
+  /** Sync every journaled key file, then empty the journal. */
+  private void checkpoint() throws IOException {
+    for (String key : journaled) {
+      File file = keyFile(directory, key);
+      if (file.exists()) {
+        try (FileInputStream stream = new FileInputStream(file)) {
+          stream.getFD().sync();
+        }
+      }
+    }
+    journaled.clear();
+    journal.reset();
+  }
+
+  /** Read a key file, recording it in the snapshot during startup. */
+  @Nullable
+  private byte[] readFile(String key) throws IOException {
+    byte[] value;
+    try {
+      value = new AtomicFile(keyFile(directory, key)).readFully();
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    snapshot.record(key, value);
+    return value;
+  }
+
+  /** Apply writes in order, only syncing the given one. */
+  private void applyAll(List<StagedWrite> writes, @Nullable StagedWrite synced)
+      throws IOException {
+    for (StagedWrite write : writes) {
+      apply(write, write == synced);
+    }
+  }
+
+  private void apply(StagedWrite write, boolean sync) throws IOException {
+    AtomicFile file = new AtomicFile(keyFile(directory, write.key));
+    if (write.value == null) {
+      file.delete();
+      return;
+    }
+    if (write.durability == Durability.BEST_EFFORT) {
+      file.overwrite(write.value);
+      return;
+    }
+    FileOutputStream writer = file.startWrite();
+    try {
+      writer.write(write.value);
+    } catch (IOException e) {
+      file.failWrite(writer);
+      throw e;
+    }
+    if (sync) {
+      file.finishWrite(writer);
+    } else {
+      file.finishWriteWithoutSync(writer);
+    }
+  }
+
+  private static String keyOf(String name) {
+    if (name.endsWith(ESCAPED_SUFFIX)) {
+      return name.substring(0, name.length() - ESCAPED_SUFFIX.length());
+    }
+    return name;
+  }
+
+  private static boolean isBookkeeping(String name) {
+    return name.equals(JOURNAL_FILE_NAME)
+        || name.equals(StartupSnapshot.FILE_NAME)
+        || name.equals(ChecksummingStorage.MARKER_FILE_NAME)
+        || name.equals(CompressingStorage.MARKER_FILE_NAME);
+  }
+
+  @Nullable
+  private static byte[] copyOf(@Nullable ByteBuffer value) {
+    if (value == null) {
+      return null;
+    }
+    byte[] copy = new byte[value.remaining()];
+    value.get(copy);
+    return copy;
+  }
+
+  private static final class StagedWrite {
+    final String key;
+    @Nullable final byte[] value;
+    final Durability durability;
+
+    StagedWrite(String key, @Nullable byte[] value, Durability durability) {
+      this.key = key;
+      this.value = value;
+      this.durability = durability;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import com.google.common.io.ByteStreams;
+import com.uber.simplestore.Durability;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Marks a namespace as holding values written by a layer that gives some of them a header, such as
+ * {@link CompressingStorage}. The layer is only installed for namespaces configured to use it or
+ * marked, so values never written through it are read as they are, whatever their first bytes.
+ *
+ * <p>Values written before the layer was first installed have no header. Those starting like one
+ * are rewritten with a header before the layer is first used, then the namespace is marked.
+ */
+final class LayerMarker {
+
+  /** Gives a value a header. */
+  interface Escaper {
+    byte[] escape(byte[] value) throws IOException;
+  }
+
+  private final NamespaceStorage storage;
+  private final File file;
+  private final byte[] magic;
+  private final int minPrefixBytes;
+  private final Escaper escaper;
+  private boolean checked;
+  private boolean marked;
+
+  /**
+   * @param storage below the layer
+   * @param directory of the namespace
+   * @param name of the marker file
+   * @param magic number starting every header
+   * @param minPrefixBytes shortest prefix of the magic number a value without a header may not
+   *     start with
+   * @param escaper giving a value starting with such a prefix a header
+   */
+  LayerMarker(
+      NamespaceStorage storage,
+      File directory,
+      String name,
+      byte[] magic,
+      int minPrefixBytes,
+      Escaper escaper) {
+    this.storage = storage;
+    this.file = new File(directory, name);
+    this.magic = magic;
+    this.minPrefixBytes = minPrefixBytes;
+    this.escaper = escaper;
+  }
+
+  /** Whether a namespace directory holds values written through the layer. */
+  static boolean isMarked(File directory, String name) {
+    return new File(directory, name).exists();
+  }
+
+  /** Rewrite values from before the layer that start like a header, once per open. */
+  void check() throws IOException {
+    if (checked) {
+      return;
+    }
+    if (!file.exists()) {
+      Set<String> keys = storage.keys();
+      boolean escaped = false;
+      for (String key : keys) {
+        InputStream in = storage.openStream(key);
+        if (in == null || !startsLikeHeader(in)) {
+          continue;
+        }
+        byte[] value = storage.read(key);
+        if (value != null) {
+          mark();
+          storage.write(key, escaper.escape(value), Durability.SYNC);
+          escaped = true;
+        }
+      }
+      if (escaped) {
+        storage.sync();
+      }
+      if (!keys.isEmpty()) {
+        // Spares the next open a scan of every value.
+        mark();
+      }
+    }
+    checked = true;
+  }
+
+  /** Mark the namespace, before the first value written through the layer. */
+  void markBeforeWrite() throws IOException {
+    check();
+    mark();
+  }
+
+  /** Whether a value streamed to a file starts like a header, and must be given one. */
+  boolean startsLikeHeader(File value) throws IOException {
+    return startsLikeHeader(new FileInputStream(value));
+  }
+
+  /** Forget what was checked, as the namespace is emptied or closed. */
+  void reset() {
+    checked = false;
+    marked = false;
+  }
+
+  private boolean startsLikeHeader(InputStream in) throws IOException {
+    byte[] prefix = new byte[magic.length];
+    int read;
+    try {
+      read = ByteStreams.read(in, prefix, 0, prefix.length);
+    } finally {
+      in.close();
+    }
+    if (read < minPrefixBytes) {
+      return false;
+    }
+    for (int i = 0; i < read; i++) {
+      if (prefix[i] != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void mark() throws IOException {
+    if (marked) {
+      return;
+    }
+    if (!file.exists()) {
+      AtomicFile marker = new AtomicFile(file);
+      FileOutputStream stream = marker.startWrite();
+      marker.finishWrite(stream);
+    }
+    marked = true;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import com.uber.simplestore.CacheStats;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Memory cache of a namespace's values, bounded by a byte budget with least recently used
+ * eviction. Absent keys may be cached as empty values, which count towards the budget like any
+ * other entry.
+ *
+ * <p>Thread-safe, so hits can be served without waiting on the namespace's ordered executor.
+ */
+final class MemoryCache {
+
+  // Rough heap cost of an entry besides its key characters and value bytes: the map node, the key
+  // string and the array header.
+  static final int ENTRY_OVERHEAD_BYTES = 80;
+
+  private final long budgetBytes;
+  private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private volatile long sizeBytes;
+
+  MemoryCache(long budgetBytes) {
+    this.budgetBytes = budgetBytes;
+  }
+
+  /** Get a value, marking it as recently used, or null if it is not cached. */
+  @Nullable
+  synchronized byte[] get(String key) {
+    byte[] value = entries.get(key);
+    if (value == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return value;
+  }
+
+  /** Like {@link #get(String)}, but leave counting a miss to the lookup that falls back to it. */
+  @Nullable
+  synchronized byte[] getIfPresent(String key) {
+    byte[] value = entries.get(key);
+    if (value != null) {
+      hitCount.incrementAndGet();
+    }
+    return value;
+  }
+
+  synchronized void put(String key, byte[] value) {
+    long weight = weigh(key, value);
+    byte[] previous = entries.remove(key);
+    long size = sizeBytes;
+    if (previous != null) {
+      size -= weigh(key, previous);
+    }
+    if (weight <= budgetBytes) {
+      entries.put(key, value);
+      size += weight;
+    }
+    sizeBytes = size;
+    trimToSize(budgetBytes);
+  }
+
+  synchronized void remove(String key) {
+    byte[] previous = entries.remove(key);
+    if (previous != null) {
+      sizeBytes -= weigh(key, previous);
+    }
+  }
+
+  synchronized void clear() {
+    entries.clear();
+    sizeBytes = 0;
+  }
+
+  /** Evict least recently used entries until at most the given bytes are held. */
+  synchronized void trimToSize(long maxBytes) {
+    long size = sizeBytes;
+    Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+    while (size > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, byte[]> eldest = iterator.next();
+      size -= weigh(eldest.getKey(), eldest.getValue());
+      iterator.remove();
+      evictionCount.incrementAndGet();
+    }
+    sizeBytes = size;
+  }
+
+  long sizeBytes() {
+    return sizeBytes;
+  }
+
+  CacheStats stats() {
+    return new CacheStats(
+        hitCount.get(), missCount.get(), evictionCount.get(), sizeBytes, budgetBytes);
+  }
+
+  private static long weigh(String key, byte[] value) {
+    return ENTRY_OVERHEAD_BYTES + 2L * key.length() + value.length;
+  }
+}
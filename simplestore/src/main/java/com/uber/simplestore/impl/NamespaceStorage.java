@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import com.uber.simplestore.Durability;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * On-disk representation of a single namespace.
+ *
+ * <p>Writes and removals are staged and only visible to {@link #read(String)}, and as durable as
+ * requested, once {@link #sync()} returns. This lets a group of writes share one sync.
+ *
+ * <p>Implementations are not thread-safe and must only be used from the namespace's ordered
+ * executor.
+ */
+interface NamespaceStorage {
+
+  /**
+   * Read the value of a key.
+   *
+   * @param key to read
+   * @return value, or null if absent
+   */
+  @Nullable
+  byte[] read(String key) throws IOException;
+
+  /**
+   * Get a reader of the current value of a key that may be called from any thread, concurrently
+   * with other readers and with changes to other keys.
+   *
+   * @param key to read
+   * @return reader giving the value or null if absent, or null if reads must use {@link
+   *     #read(String)}
+   */
+  @Nullable
+  Callable<byte[]> concurrentReader(String key) throws IOException;
+
+  /**
+   * Get a writer that replaces or removes the value of a key right away, and may be called from any
+   * thread concurrently with readers and with writers of other keys. Nothing else may be staged
+   * while it runs.
+   *
+   * @param key to write
+   * @param value non-empty value, or null to remove the key
+   * @param durability required once the writer returns
+   * @return writer, or null if writes must be staged and synced
+   */
+  @Nullable
+  Callable<Void> concurrentWriter(String key, @Nullable byte[] value, Durability durability)
+      throws IOException;
+
+  /**
+   * Open a stream of the current value of a key that may be read from any thread. It keeps reading
+   * the value it was opened on should the key be replaced later, unless it is overwritten in place.
+   *
+   * @param key to read
+   * @return stream, or null if absent
+   */
+  @Nullable
+  InputStream openStream(String key) throws IOException;
+
+  /**
+   * Replace the value of a key with a complete file right away, taking the file. Nothing else may
+   * be staged.
+   *
+   * @param key to write
+   * @param file non-empty value, already synced if the durability requires it
+   * @param durability required once this returns
+   */
+  void commitFile(String key, File file, Durability durability) throws IOException;
+
+  /** List every listable key in the namespace, in no particular order. */
+  Set<String> keys() throws IOException;
+
+  /**
+   * Whether {@link #keys()} lists the key when it is present. A key that is listable but not listed
+   * is absent without needing a {@link #read(String)}.
+   */
+  boolean isListable(String key);
+
+  /**
+   * Stage a replacement of the value of a key.
+   *
+   * @param key to write
+   * @param value non-empty value
+   * @param durability required once synced
+   */
+  void write(String key, byte[] value, Durability durability) throws IOException;
+
+  /**
+   * Stage the removal of a key.
+   *
+   * @param key to remove
+   * @param durability required once synced
+   */
+  void delete(String key, Durability durability) throws IOException;
+
+  /**
+   * Commit all staged writes and removals, syncing those which require {@link Durability#SYNC}.
+   *
+   * <p>The synced ones are committed atomically: after a crash, or if this fails, either all or
+   * none of them are present.
+   */
+  void sync() throws IOException;
+
+  /** Remove every key in the namespace, leaving child namespaces untouched. */
+  void clear() throws IOException;
+
+  /**
+   * Discard staged changes and release open files and in-memory state. The storage reopens from
+   * disk on next use, which allows the directory to be moved or deleted underneath it.
+   */
+  void close();
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import android.util.Log;
+import com.google.common.annotations.VisibleForTesting;
+import com.uber.simplestore.Durability;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * Packs all keys of a namespace into a single table file, which is read whole into memory on first
+ * use. A namespace of many small values, such as the flags of a {@link
+ * com.uber.simplestore.primitive.PrimitiveSimpleStore}, then opens with one read instead of a file
+ * open per key.
+ *
+ * <p>The table starts with a header followed by entries of the form {@code keyLength, key,
+ * valueLength, value}. Value lengths below 255, which covers every primitive, take a single byte.
+ *
+ * <p>Writes are staged and applied together on {@link #sync()}. A batch that only overwrites values
+ * with new ones of the same length, as primitive updates do, is patched into the table in place.
+ * If a write in it is {@link Durability#SYNC} it is first appended to a write-ahead journal as one
+ * synced group, so that a crash during the patch is repaired by replaying the journal on next use.
+ * A batch of only {@link Durability#BEST_EFFORT} writes is patched without one. Any other batch,
+ * including an {@link Durability#ATOMIC} one that no sync would keep whole, rewrites the table
+ * atomically. Once the journal grows large, or the storage is closed, the table is synced and the
+ * journal removed.
+ *
+ * <p>A table that fails to parse fails every read, unless corruption is a miss, in which case it is
+ * dropped and the namespace starts over empty.
+ */
+final class PackedTableStorage implements NamespaceStorage {
+
+  static final String TABLE_FILE_NAME = "simplestore.table";
+  static final String JOURNAL_FILE_NAME = TABLE_FILE_NAME + ".journal";
+
+  private static final String LOG_TAG = "PackedTableStorage";
+  private static final Charset KEY_ENCODING = StandardCharsets.UTF_8;
+  private static final int MAGIC = 0x53535442;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 9;
+  private static final int MAX_KEY_LENGTH = 0xFFFF;
+  private static final int LONG_VALUE = 0xFF;
+  private static final long CHECKPOINT_BYTES = 64 * 1024;
+
+  private final File directory;
+  private final AtomicFile tableFile;
+  private final RecordLog journal;
+  private final boolean corruptionIsMiss;
+
+  @Nullable private Map<String, Slot> entries;
+  // Keys written since the last sync, patched in place unless the table must be rewritten.
+  private final Set<String> dirty = new LinkedHashSet<>();
+  private boolean rewriteStaged;
+  private boolean syncStaged;
+  private boolean atomicStaged;
+  @Nullable private RandomAccessFile patcher;
+
+  PackedTableStorage(File directory) {
+    this(directory, false);
+  }
+
+  /**
+   * @param directory of the namespace
+   * @param corruptionIsMiss whether a table failing to parse is dropped instead of failing reads
+   */
+  PackedTableStorage(File directory, boolean corruptionIsMiss) {
+    this.directory = directory;
+    this.tableFile = new AtomicFile(new File(directory, TABLE_FILE_NAME));
+    this.journal = new RecordLog(new File(directory, JOURNAL_FILE_NAME));
+    this.corruptionIsMiss = corruptionIsMiss;
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    Slot slot = load().get(key);
+    return slot == null ? null : slot.value;
+  }
+
+  @Nullable
+  @Override
+  public Callable<byte[]> concurrentReader(String key) {
+    // Values are served from memory once the table is loaded.
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public Callable<Void> concurrentWriter(
+      String key, @Nullable byte[] value, Durability durability) {
+    // Every write lands in the one table.
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public InputStream openStream(String key) throws IOException {
+    byte[] value = read(key);
+    return value == null ? null : new ByteArrayInputStream(value);
+  }
+
+  @Override
+  public void commitFile(String key, File file, Durability durability) throws IOException {
+    // Copied into the table, which is held in memory anyway.
+    byte[] value = new AtomicFile(file).readFully();
+    write(key, value, durability);
+    sync();
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  @Override
+  public Set<String> keys() throws IOException {
+    return new HashSet<>(load().keySet());
+  }
+
+  @Override
+  public boolean isListable(String key) {
+    return true;
+  }
+
+  @Override
+  public void write(String key, byte[] value, Durability durability) throws IOException {
+    if (key.getBytes(KEY_ENCODING).length > MAX_KEY_LENGTH) {
+      throw new IOException("Key too long for " + TABLE_FILE_NAME + ": " + key);
+    }
+    Map<String, Slot> table = load();
+    Slot previous = table.get(key);
+    Slot slot;
+    if (previous == null) {
+      slot = new Slot(value, -1, 0);
+    } else {
+      slot = new Slot(value, previous.offset, previous.storedLength);
+    }
+    table.put(key, slot);
+    rewriteStaged |= slot.offset < 0 || slot.storedLength != value.length;
+    stage(key, durability);
+  }
+
+  @Override
+  public void delete(String key, Durability durability) throws IOException {
+    Map<String, Slot> table = load();
+    if (table.remove(key) == null) {
+      return;
+    }
+    rewriteStaged = true;
+    stage(key, durability);
+  }
+
+  @Override
+  public void sync() throws IOException {
+    if (dirty.isEmpty()) {
+      return;
+    }
+    Map<String, Slot> table = load();
+    try {
+      if (rewriteStaged || (atomicStaged && !syncStaged)) {
+        rewrite(table, syncStaged);
+      } else {
+        patch(table);
+      }
+    } catch (IOException e) {
+      // The table in memory may not match the one on disk, reload it and replay the journal.
+      discard();
+      throw e;
+    } finally {
+      dirty.clear();
+      rewriteStaged = false;
+      syncStaged = false;
+      atomicStaged = false;
+    }
+  }
+
+  @Override
+  public void clear() {
+    discard();
+    tableFile.delete();
+    //noinspection ResultOfMethodCallIgnored
+    journal.getFile().delete();
+    //noinspection ResultOfMethodCallIgnored
+    directory.delete();
+  }
+
+  @Override
+  public void close() {
+    if (journal.isOpen()) {
+      try {
+        checkpoint();
+      } catch (IOException e) {
+        Log.e(LOG_TAG, "Failed to checkpoint " + directory, e);
+      }
+    }
+    discard();
+  }
+
+  /** Drop the table and staged writes from memory, leaving any journal to be replayed. */
+  private void discard() {
+    dirty.clear();
+    rewriteStaged = false;
+    syncStaged = false;
+    atomicStaged = false;
+    journal.close();
+    closePatcher();
+    entries = null;
+  }
+
+  private void stage(String key, Durability durability) {
+    dirty.add(key);
+    syncStaged |= durability == Durability.SYNC;
+    atomicStaged |= durability != Durability.BEST_EFFORT;
+  }
+
+  /** Read the table, replaying a journal left behind by a crash over it. */
+  private Map<String, Slot> load() throws IOException {
+    if (entries != null) {
+      return entries;
+    }
+    Map<String, Slot> table;
+    try {
+      table = parse(tableFile.readFully());
+    } catch (FileNotFoundException e) {
+      table = new LinkedHashMap<>();
+    } catch (IOException e) {
+      if (!corruptionIsMiss) {
+        throw e;
+      }
+      Log.w(LOG_TAG, "Dropping corrupt " + tableFile.getBaseFile(), e);
+      tableFile.delete();
+      table = new LinkedHashMap<>();
+    }
+    if (journal.getFile().exists()) {
+      boolean[] replayed = new boolean[1];
+      Map<String, Slot> loaded = table;
+      try {
+        journal.open(
+            (offset, size, key, value) -> {
+              replayed[0] = true;
+              if (value == null) {
+                loaded.remove(key);
+              } else {
+                byte[] copy = new byte[value.remaining()];
+                value.get(copy);
+                loaded.put(key, new Slot(copy, -1, 0));
+              }
+            });
+        if (replayed[0]) {
+          rewrite(table, true);
+        }
+      } finally {
+        journal.close();
+      }
+      removeJournal();
+    }
+    entries = table;
+    return table;
+  }
+
+  /**
+   * Overwrite the dirty values in place, journaling them first if any must be synced, or else
+   * checkpointing any journal first.
+   */
+  private void patch(Map<String, Slot> table) throws IOException {
+    if (syncStaged) {
+      if (!journal.isOpen()) {
+        journal.open(null);
+      }
+      for (String key : dirty) {
+        journal.append(key, Objects.requireNonNull(table.get(key)).value);
+      }
+      journal.sync();
+    } else if (journal.isOpen()) {
+      // An older journal record of a dirty key would be replayed over the patch after a crash.
+      checkpoint();
+    }
+    RandomAccessFile file = patcher();
+    for (String key : dirty) {
+      Slot slot = Objects.requireNonNull(table.get(key));
+      file.seek(slot.offset);
+      file.write(slot.value);
+    }
+    if (journal.isOpen() && journal.end() >= CHECKPOINT_BYTES) {
+      checkpoint();
+    }
+  }
+
+  /** Atomically replace the table file with the entries in memory. */
+  private void rewrite(Map<String, Slot> table, boolean sync) throws IOException {
+    List<Map.Entry<String, Slot>> written = new ArrayList<>(table.entrySet());
+    List<byte[]> keys = new ArrayList<>(written.size());
+    int size = HEADER_SIZE;
+    for (Map.Entry<String, Slot> entry : written) {
+      byte[] key = entry.getKey().getBytes(KEY_ENCODING);
+      keys.add(key);
+      int length = entry.getValue().value.length;
+      size += 2 + key.length + (length < LONG_VALUE ? 1 : 5) + length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(MAGIC).put((byte) VERSION).putInt(written.size());
+    List<Slot> placed = new ArrayList<>(written.size());
+    for (int i = 0; i < written.size(); i++) {
+      byte[] key = keys.get(i);
+      byte[] value = written.get(i).getValue().value;
+      buffer.putShort((short) key.length).put(key);
+      if (value.length < LONG_VALUE) {
+        buffer.put((byte) value.length);
+      } else {
+        buffer.put((byte) LONG_VALUE).putInt(value.length);
+      }
+      placed.add(new Slot(value, buffer.position(), value.length));
+      buffer.put(value);
+    }
+
+    closePatcher();
+    FileOutputStream writer = tableFile.startWrite();
+    try {
+      writer.write(buffer.array());
+    } catch (IOException e) {
+      tableFile.failWrite(writer);
+      throw e;
+    }
+    // Journaled patches are only durable once the table replacing them is.
+    if (sync || journal.isOpen()) {
+      tableFile.finishWrite(writer);
+    } else {
+      tableFile.finishWriteWithoutSync(writer);
+    }
+    for (int i = 0; i < written.size(); i++) {
+      table.put(written.get(i).getKey(), placed.get(i));
+    }
+    if (journal.isOpen()) {
+      removeJournal();
+    }
+  }
+
+  /** Sync the patched table, then remove the journal of the patches. */
+  private void checkpoint() throws IOException {
+    patcher().getFD().sync();
+    removeJournal();
+  }
+
+  private RandomAccessFile patcher() throws IOException {
+    RandomAccessFile file = patcher;
+    if (file == null) {
+      file = new RandomAccessFile(tableFile.getBaseFile(), "rw");
+      patcher = file;
+    }
+    return file;
+  }
+
+  private void removeJournal() {
+    journal.close();
+    //noinspection ResultOfMethodCallIgnored
+    journal.getFile().delete();
+  }
+
+  private void closePatcher() {
+    RandomAccessFile file = patcher;
+    patcher = null;
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        Log.e(LOG_TAG, "Failed to close " + tableFile.getBaseFile(), e);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static Map<String, Slot> parse(byte[] bytes) throws IOException {
+    Map<String, Slot> table = new LinkedHashMap<>();
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    try {
+      if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+        throw new IOException("Not a table of version " + VERSION);
+      }
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        byte[] key = new byte[buffer.getShort() & MAX_KEY_LENGTH];
+        buffer.get(key);
+        int length = buffer.get() & 0xFF;
+        if (length == LONG_VALUE) {
+          length = buffer.getInt();
+        }
+        if (length < 0) {
+          throw new IOException("Corrupt value length " + length);
+        }
+        int offset = buffer.position();
+        byte[] value = new byte[length];
+        buffer.get(value);
+        table.put(new String(key, KEY_ENCODING), new Slot(value, offset, length));
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated table", e);
+    }
+    return table;
+  }
+
+  /** A value and where its bytes sit in the table file. */
+  @VisibleForTesting
+  static final class Slot {
+    final byte[] value;
+    // Offset of the stored value in the table file, or -1 if it has not been written there yet.
+    final long offset;
+    final int storedLength;
+
+    Slot(byte[] value, long offset, int storedLength) {
+      this.value = value;
+      this.offset = offset;
+      this.storedLength = storedLength;
+    }
+  }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * A file of checksummed key-value records, used by the append log and the write-ahead journal.
+ *
+ * <p>The file starts with a header followed by records of the form {@code crc32, keyLength,
+ * valueLength, key, value}, where the checksum covers everything after itself and a value length of
+ * -1 marks a removal. Appends are staged in memory and written with a single write on {@link
+ * #flush()}, so a group of records costs one write and, on {@link #sync()}, one data sync.
+ *
+ * <p>Each flushed group is preceded by a commit record with a key length of -1 and the byte length
+ * of the group as its value length. On open a group is only replayed if all of its records are
+ * intact, so a crash leaves either all or none of a group. A torn group at the end of the file from
+ * an interrupted write is truncated. Records may also be written outside of a group, each then
+ * committed on its own, by writers that sync the whole file before using it.
+ *
+ * <p>Not thread-safe.
+ */
+final class RecordLog {
+
+  static final int FILE_HEADER_SIZE = 8;
+
+  private static final String LOG_TAG = "RecordLog";
+  private static final Charset KEY_ENCODING = StandardCharsets.UTF_8;
+  private static final int MAGIC = 0x53534c47;
+  private static final int VERSION = 1;
+  private static final int RECORD_HEADER_SIZE = 12;
+  private static final int TOMBSTONE = -1;
+  private static final int COMMIT = -1;
+
+  /** Receives the intact records of a file in order. */
+  interface Visitor {
+    /**
+     * @param offset of the record in the file
+     * @param size of the record in bytes
+     * @param key of the record
+     * @param value of the record, only valid during the call, or null for a removal
+     */
+    void onRecord(long offset, int size, String key, @Nullable ByteBuffer value) throws IOException;
+  }
+
+  private final File file;
+  @Nullable private RandomAccessFile raf;
+  private long flushedEnd;
+  private ByteBuffer staged = ByteBuffer.allocate(0);
+
+  RecordLog(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Wrap a file that was just written in this format, without replaying it.
+   *
+   * @param file opened for writing
+   * @param end of the last record
+   */
+  RecordLog(File file, RandomAccessFile raf, long end) {
+    this.file = file;
+    this.raf = raf;
+    this.flushedEnd = end;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  boolean isOpen() {
+    return raf != null;
+  }
+
+  /**
+   * Open the file, creating it if absent, and replay every intact record.
+   *
+   * @param visitor to receive records, may be null to skip replay of a new file
+   */
+  void open(@Nullable Visitor visitor) throws IOException {
+    if (raf != null) {
+      throw new IllegalStateException(file + " already open");
+    }
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Failed to create directory for " + file);
+    }
+    RandomAccessFile opened = new RandomAccessFile(file, "rw");
+    try {
+      if (opened.length() < FILE_HEADER_SIZE) {
+        writeHeader(opened);
+        opened.getFD().sync();
+      }
+      long validEnd = replay(visitor);
+      if (validEnd < opened.length()) {
+        Log.e(LOG_TAG, "Truncating torn records at " + validEnd + " in " + file);
+        opened.setLength(validEnd);
+      }
+      raf = opened;
+      flushedEnd = validEnd;
+    } catch (IOException e) {
+      opened.close();
+      throw e;
+    }
+  }
+
+  /** Offset just past the last record, including staged records. */
+  long end() {
+    return flushedEnd + staged.position();
+  }
+
+  /**
+   * Stage a record to be written on the next flush, in the same group as the other staged records.
+   *
+   * @param key of the record
+   * @param value to store, or null to record a removal
+   * @return offset of the record
+   */
+  long append(String key, @Nullable byte[] value) {
+    byte[] keyBytes = key.getBytes(KEY_ENCODING);
+    int valueLength = value == null ? 0 : value.length;
+    int size = RECORD_HEADER_SIZE + keyBytes.length + valueLength;
+    // Leave room for the commit record ahead of the first record of a group.
+    int reserved = staged.position() == 0 ? RECORD_HEADER_SIZE : 0;
+    if (staged.remaining() < reserved + size) {
+      ByteBuffer grown =
+          ByteBuffer.allocate(
+              Math.max(staged.capacity() * 2, staged.position() + reserved + size));
+      staged.flip();
+      grown.put(staged);
+      staged = grown;
+    }
+    staged.position(staged.position() + reserved);
+    long offset = end();
+    int start = staged.position();
+    staged.putInt(0);
+    staged.putInt(keyBytes.length);
+    staged.putInt(value == null ? TOMBSTONE : value.length);
+    staged.put(keyBytes);
+    if (value != null) {
+      staged.put(value);
+    }
+    staged.putInt(start, checksum(staged.array(), start, size));
+    return offset;
+  }
+
+  /** Write all staged records. On failure they are dropped and the file is left unchanged. */
+  void flush() throws IOException {
+    if (staged.position() == 0) {
+      return;
+    }
+    FileChannel channel = channel();
+    staged.putInt(4, COMMIT);
+    staged.putInt(8, staged.position() - RECORD_HEADER_SIZE);
+    staged.putInt(0, checksum(staged.array(), 0, RECORD_HEADER_SIZE));
+    staged.flip();
+    try {
+      writeFully(channel, staged, flushedEnd);
+    } catch (IOException e) {
+      // Drop the partial records so later appends are not hidden behind them on replay.
+      staged.clear();
+      channel.truncate(flushedEnd);
+      throw e;
+    }
+    flushedEnd += staged.limit();
+    staged.clear();
+  }
+
+  /** Write and durably sync all staged records. */
+  void sync() throws IOException {
+    flush();
+    channel().force(false);
+  }
+
+  /** Drop every record, keeping an empty but valid file. */
+  void reset() throws IOException {
+    staged.clear();
+    RandomAccessFile current = requireOpen();
+    writeHeader(current);
+    current.getFD().sync();
+    flushedEnd = FILE_HEADER_SIZE;
+  }
+
+  /** Read bytes at an offset, flushing staged records first if needed. */
+  void readFully(ByteBuffer buffer, long offset) throws IOException {
+    if (offset + buffer.remaining() > flushedEnd) {
+      flush();
+    }
+    readFully(channel(), buffer, offset);
+  }
+
+  void close() {
+    staged.clear();
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (IOException e) {
+        Log.e(LOG_TAG, "Failed to close " + file);
+      }
+    }
+    raf = null;
+    flushedEnd = 0;
+  }
+
+  private FileChannel channel() {
+    return requireOpen().getChannel();
+  }
+
+  private RandomAccessFile requireOpen() {
+    if (raf == null) {
+      throw new IllegalStateException(file + " is not open");
+    }
+    return raf;
+  }
+
+  private long replay(@Nullable Visitor visitor) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unrecognized log format in " + file);
+      }
+      long length = file.length();
+      long offset = FILE_HEADER_SIZE;
+      byte[] buffer = new byte[256];
+      while (offset + RECORD_HEADER_SIZE <= length) {
+        in.readFully(buffer, 0, RECORD_HEADER_SIZE);
+        ByteBuffer header = ByteBuffer.wrap(buffer);
+        int keyLength = header.getInt(4);
+        int valueLength = header.getInt(8);
+        long bodyLength;
+        if (keyLength == COMMIT) {
+          bodyLength = valueLength;
+        } else {
+          bodyLength = (long) keyLength + Math.max(valueLength, 0);
+        }
+        if (bodyLength < 0
+            || valueLength < TOMBSTONE
+            || offset + RECORD_HEADER_SIZE + bodyLength > length) {
+          break;
+        }
+        int size = RECORD_HEADER_SIZE + (int) bodyLength;
+        if (buffer.length < size) {
+          buffer = Arrays.copyOf(buffer, size);
+        }
+        try {
+          in.readFully(buffer, RECORD_HEADER_SIZE, (int) bodyLength);
+        } catch (EOFException e) {
+          break;
+        }
+        if (keyLength == COMMIT) {
+          if (!replayGroup(buffer, size, offset, visitor)) {
+            break;
+          }
+        } else {
+          // A record outside of a group, such as one copied by compaction, stands on its own.
+          if (recordSize(buffer, 0, size) != size) {
+            break;
+          }
+          visit(visitor, buffer, 0, offset);
+        }
+        offset += size;
+      }
+      return offset;
+    }
+  }
+
+  /** Visit the records of a group if its commit record and all of its records are intact. */
+  private static boolean replayGroup(
+      byte[] buffer, int size, long offset, @Nullable Visitor visitor) throws IOException {
+    if (checksum(buffer, 0, RECORD_HEADER_SIZE) != ByteBuffer.wrap(buffer).getInt(0)) {
+      return false;
+    }
+    int position = RECORD_HEADER_SIZE;
+    while (position < size) {
+      int recordSize = recordSize(buffer, position, size);
+      if (recordSize < 0) {
+        return false;
+      }
+      position += recordSize;
+    }
+    position = RECORD_HEADER_SIZE;
+    while (position < size) {
+      int recordSize = visit(visitor, buffer, position, offset + position);
+      position += recordSize;
+    }
+    return true;
+  }
+
+  /** Size of the intact record at a position in the buffer, or -1 if it is torn. */
+  private static int recordSize(byte[] buffer, int position, int limit) {
+    if (limit - position < RECORD_HEADER_SIZE) {
+      return -1;
+    }
+    ByteBuffer record = ByteBuffer.wrap(buffer);
+    int keyLength = record.getInt(position + 4);
+    int valueLength = record.getInt(position + 8);
+    if (keyLength < 0
+        || valueLength < TOMBSTONE
+        || (long) keyLength + Math.max(valueLength, 0) > limit - position - RECORD_HEADER_SIZE) {
+      return -1;
+    }
+    int size = RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+    if (checksum(buffer, position, size) != record.getInt(position)) {
+      return -1;
+    }
+    return size;
+  }
+
+  /** Pass the record at a position in the buffer to the visitor, returning its size. */
+  private static int visit(@Nullable Visitor visitor, byte[] buffer, int position, long offset)
+      throws IOException {
+    ByteBuffer record = ByteBuffer.wrap(buffer);
+    int keyLength = record.getInt(position + 4);
+    int valueLength = record.getInt(position + 8);
+    int size = RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+    if (visitor != null) {
+      int keyStart = position + RECORD_HEADER_SIZE;
+      String key = new String(buffer, keyStart, keyLength, KEY_ENCODING);
+      ByteBuffer value =
+          valueLength == TOMBSTONE
+              ? null
+              : ByteBuffer.wrap(buffer, keyStart + keyLength, valueLength);
+      visitor.onRecord(offset, size, key, value);
+    }
+    return size;
+  }
+
+  /** Checksum of a record, covering everything after the checksum itself. */
+  private static int checksum(byte[] buffer, int position, int size) {
+    CRC32 crc = new CRC32();
+    crc.update(buffer, position + 4, size - 4);
+    return (int) crc.getValue();
+  }
+
+  /** Truncate a file to just the format header. */
+  static void writeHeader(RandomAccessFile file) throws IOException {
+    file.setLength(0);
+    file.seek(0);
+    file.writeInt(MAGIC);
+    file.writeInt(VERSION);
+  }
+
+  static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+    int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset + buffer.position() - start);
+      if (read < 0) {
+        throw new EOFException("File ended before " + offset);
+      }
+    }
+  }
+
+  static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+    int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, offset + buffer.position() - start);
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.uber.simplestore.impl;
 
+import android.content.ComponentCallbacks2;
 import com.google.common.annotations.VisibleForTesting;
 import com.uber.simplestore.DirectoryProvider;
 import com.uber.simplestore.NamespaceConfig;
@@ -98,6 +99,62 @@ public final class SimpleStoreFactory {
     }
   }
 
+  /**
+   * Release memory cache across every open namespace in response to a trim level from {@link
+   * ComponentCallbacks2#onTrimMemory(int)}. Should be called from the application's component
+   * callbacks.
+   *
+   * <p>Higher levels drop a larger share of each cache. Namespaces opened with {@link
+   * NamespaceConfig#CRITICAL} are trimmed last, and only once memory is critically low or the
+   * process is near the end of the background LRU list. Values decoded from the memory cache, such
+   * as parsed messages, are trimmed like other namespaces.
+   *
+   * @param level passed to {@link ComponentCallbacks2#onTrimMemory(int)}
+   */
+  public static void onTrimMemory(int level) {
+    float retain = retainFraction(level, false);
+    float retainCritical = retainFraction(level, true);
+    List<SimpleStoreImpl> critical = new ArrayList<>();
+    synchronized (namespacesLock) {
+      for (SimpleStoreImpl store : namespaces.values()) {
+        if (store.isCritical()) {
+          critical.add(store);
+        } else if (retain < 1) {
+          store.trimCache(retain);
+        }
+      }
+    }
+    if (retainCritical < 1) {
+      for (SimpleStoreImpl store : critical) {
+        store.trimCache(retainCritical);
+      }
+    }
+    if (retain < 1) {
+      DecodedValueCache.trimAll(retain);
+    }
+  }
+
+  /** Share of the memory cache to keep for a trim level. */
+  @VisibleForTesting
+  static float retainFraction(int level, boolean critical) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+      return 0;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+      return critical ? 0.5f : 0;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      return critical ? 1 : 0.5f;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+      return critical ? 1 : 0.75f;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      return critical ? 0.5f : 0;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      return critical ? 1 : 0.5f;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+      return critical ? 1 : 0.75f;
+    }
+    return 1;
+  }
+
   @VisibleForTesting
   static List<SimpleStoreImpl> getOpenChildren(String scope) {
     List<SimpleStoreImpl> list = new ArrayList<>();
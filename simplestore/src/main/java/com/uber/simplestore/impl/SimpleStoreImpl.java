@@ -17,26 +17,47 @@ package com.uber.simplestore.impl;
 
 import android.util.Log;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncCallable;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.uber.simplestore.CacheStats;
 import com.uber.simplestore.DirectoryProvider;
+import com.uber.simplestore.Durability;
 import com.uber.simplestore.NamespaceConfig;
 import com.uber.simplestore.SimpleStore;
 import com.uber.simplestore.SimpleStoreConfig;
 import com.uber.simplestore.StoreClosedException;
+import com.uber.simplestore.StringEncoding;
+import com.uber.simplestore.Transaction;
+import com.uber.simplestore.ValueOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /** Asynchronous storage implementation. */
 @SuppressWarnings("UnstableApiUsage")
@@ -45,25 +66,70 @@ final class SimpleStoreImpl implements SimpleStore {
   private static final int CLOSED = 1;
   private static final int TOMBSTONED = 2;
   private static final byte[] EMPTY_BYTES = new byte[0];
-  private static final Charset STRING_ENCODING = StandardCharsets.UTF_16BE;
+  // Holds values being streamed to disk until they are committed.
+  private static final String STAGING_DIRECTORY_NAME = ".simplestore-staging";
 
+  private final Durability durability;
+  private final boolean critical;
+  private final boolean parallelReads;
+  private final StringEncoding stringEncoding;
+  private final boolean rewriteLegacyStrings;
   private final String namespace;
   @Nullable private File namespacedDirectory;
+  @Nullable private NamespaceStorage storage;
 
   AtomicInteger available = new AtomicInteger(OPEN);
 
   // Only touch from the serial executor.
-  private final Map<String, byte[]> cache = new HashMap<>();
+  private final MemoryCache cache;
+  // Sorted keys on disk, only touch from the serial executor. Null until loaded from storage.
+  @Nullable private NavigableSet<String> keyIndex;
+  // Reads still in flight on the IO executor, only touch from the serial executor.
+  private final Map<String, ListenableFutureTask<byte[]>> pendingReads = new HashMap<>();
   private final Executor orderedIoExecutor =
       MoreExecutors.newSequentialExecutor(SimpleStoreConfig.getIOExecutor());
+  // Ordering of the disk reads and writes of each stripe of keys, null when ordered by the above.
+  @Nullable private final Executor[] stripes;
+  // Tasks running on a stripe and how to finish each, only touch from the serial executor.
+  private final Map<ListenableFutureTask<?>, Runnable> stripeTasks = new LinkedHashMap<>();
+  // The last stripe task of each key, only touch from the serial executor.
+  private final Map<String, ListenableFuture<?>> stripeTails = new HashMap<>();
   private final AtomicReference<Exception> flush = new AtomicReference<>(null);
+  private final Object batchLock = new Object();
+
+  // Puts enqueued since the last other operation, committed together.
+  @GuardedBy("batchLock")
+  @Nullable
+  private WriteBatch openBatch;
+
+  // Queued writes of each key not yet settled, whose cached values may be about to change.
+  @GuardedBy("batchLock")
+  private final Map<String, Integer> queuedWrites = new HashMap<>();
+
+  // Queued clears not yet done.
+  @GuardedBy("batchLock")
+  private int queuedClears;
 
   SimpleStoreImpl(DirectoryProvider directoryProvider, String namespace, NamespaceConfig config) {
     this.namespace = namespace;
+    this.durability = config.getDurability();
+    this.critical = config.isCritical();
+    this.parallelReads = config.isParallelReads();
+    this.stringEncoding = config.getStringEncoding();
+    this.rewriteLegacyStrings = config.isRewriteLegacyStrings();
+    if (config.getStripes() > 1) {
+      stripes = new Executor[config.getStripes()];
+      for (int i = 0; i < stripes.length; i++) {
+        stripes[i] = MoreExecutors.newSequentialExecutor(SimpleStoreConfig.getIOExecutor());
+      }
+    } else {
+      stripes = null;
+    }
+    this.cache = new MemoryCache(config.getCacheBudgetBytes());
     orderedIoExecutor.execute(
         () -> {
           File directory;
-          if (config.equals(NamespaceConfig.CACHE)) {
+          if (config.isCache()) {
             directory = directoryProvider.cacheDirectoryPath();
           } else {
             directory = directoryProvider.filesDirectoryPath();
@@ -71,6 +137,47 @@ final class SimpleStoreImpl implements SimpleStore {
           namespacedDirectory = new File(directory.getAbsolutePath() + "/simplestore/" + namespace);
           //noinspection ResultOfMethodCallIgnored
           namespacedDirectory.mkdirs();
+          // Left by streams that were never committed.
+          recursiveDelete(new File(namespacedDirectory, STAGING_DIRECTORY_NAME));
+          NamespaceStorage format;
+          switch (config.getStorageFormat()) {
+            case APPEND_LOG:
+              format = new AppendLogStorage(namespacedDirectory, orderedIoExecutor);
+              break;
+            case PACKED_TABLE:
+              format = new PackedTableStorage(namespacedDirectory, config.isCache());
+              break;
+            case FILE_PER_KEY:
+            default:
+              format = new FilePerKeyStorage(namespacedDirectory);
+              break;
+          }
+          // Kept while values written by a layer remain, even once it is turned off.
+          NamespaceStorage layered = format;
+          if (config.isChecksummed() || ChecksummingStorage.isMarked(namespacedDirectory)) {
+            layered =
+                new ChecksummingStorage(
+                    layered, namespacedDirectory, config.isChecksummed(), config.isCache());
+          }
+          if (config.getCodec() != null || CompressingStorage.isMarked(namespacedDirectory)) {
+            layered =
+                new CompressingStorage(
+                    layered,
+                    namespacedDirectory,
+                    config.getCodec(),
+                    config.getCompressionThresholdBytes(),
+                    config.isCache());
+          }
+          storage = layered;
+          try {
+            keyIndex();
+            if (config.isPreload()) {
+              preload();
+            }
+          } catch (IOException e) {
+            // Retried by the first operation that needs it.
+            Log.e(getClass().getName(), "Failed to index " + namespacedDirectory, e);
+          }
         });
   }
 
@@ -79,11 +186,18 @@ final class SimpleStoreImpl implements SimpleStore {
     return Futures.transform(
         get(key),
         (bytes) -> {
-          if (bytes != null && bytes.length > 0) {
-            return new String(bytes, STRING_ENCODING);
-          } else {
+          if (bytes == null || bytes.length == 0) {
             return "";
           }
+          String value = StringEncoding.decode(bytes);
+          if (rewriteLegacyStrings && StringEncoding.of(bytes) != stringEncoding) {
+            byte[] encoded = stringEncoding.encode(value);
+            // Strings starting like the UTF-8 marker are UTF-8 in either encoding.
+            if (StringEncoding.of(encoded) != StringEncoding.of(bytes)) {
+              rewriteIfUnchanged(key, bytes, encoded);
+            }
+          }
+          return value;
         },
         MoreExecutors.directExecutor());
   }
@@ -94,7 +208,7 @@ final class SimpleStoreImpl implements SimpleStore {
     if (value == null || value.isEmpty()) {
       bytes = null;
     } else {
-      bytes = value.getBytes(STRING_ENCODING);
+      bytes = stringEncoding.encode(value);
     }
     return Futures.transform(put(key, bytes), (b) -> value, MoreExecutors.directExecutor());
   }
@@ -102,55 +216,208 @@ final class SimpleStoreImpl implements SimpleStore {
   @Override
   public ListenableFuture<byte[]> get(String key) {
     requireOpen();
-    return Futures.submitAsync(
+    byte[] cached = getIfCached(key);
+    if (cached != null) {
+      return Futures.immediateFuture(cached);
+    }
+    return submit(
         () -> {
           Exception isDead = isDead();
           if (isDead != null) {
             return Futures.immediateFailedFuture(isDead);
           }
-          byte[] value;
-          if (cache.containsKey(key)) {
-            value = cache.get(key);
-          } else {
-            try {
-              value = readFile(key);
-            } catch (IOException e) {
-              return Futures.immediateFailedFuture(e);
+          try {
+            return readAsync(key);
+          } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
+          }
+        });
+  }
+
+  @Override
+  public ListenableFuture<ByteBuffer> getBuffer(String key) {
+    return Futures.transform(
+        get(key),
+        (v) -> ByteBuffer.wrap(Objects.requireNonNull(v)).asReadOnlyBuffer(),
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public ListenableFuture<InputStream> openInputStream(String key) {
+    requireOpen();
+    byte[] cached = getIfCached(key);
+    if (cached != null) {
+      return Futures.immediateFuture(new ByteArrayInputStream(cached));
+    }
+    return submit(
+        () -> {
+          Exception isDead = isDead();
+          if (isDead != null) {
+            return Futures.immediateFailedFuture(isDead);
+          }
+          awaitRead(key);
+          drainStripes();
+          try {
+            if (isAbsent(key)) {
+              return Futures.immediateFuture(new ByteArrayInputStream(EMPTY_BYTES));
             }
-            if (value == null || value.length == 0) {
-              value = EMPTY_BYTES;
+            byte[] value = cache.get(key);
+            InputStream stream = value == null ? storage().openStream(key) : null;
+            if (stream == null) {
+              stream = new ByteArrayInputStream(value == null ? EMPTY_BYTES : value);
             }
-            cache.put(key, value);
+            return Futures.immediateFuture(stream);
+          } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
           }
-          return Futures.immediateFuture(value);
-        },
-        orderedIoExecutor);
+        });
+  }
+
+  @Nullable
+  @Override
+  public byte[] getIfCached(String key) {
+    requireOpen();
+    synchronized (batchLock) {
+      // Hits must not skip ahead of a queued change to the key, or of a failing deleteAllNow.
+      if (queuedClears > 0 || queuedWrites.containsKey(key) || isDead() != null) {
+        return null;
+      }
+      return cache.getIfPresent(key);
+    }
+  }
+
+  @Override
+  public ListenableFuture<Map<String, byte[]>> getAll(Collection<String> keys) {
+    requireOpen();
+    return submit(
+        () -> {
+          Exception isDead = isDead();
+          if (isDead != null) {
+            return Futures.immediateFailedFuture(isDead);
+          }
+          List<String> keyList = new ArrayList<>(keys);
+          List<ListenableFuture<byte[]>> reads = new ArrayList<>();
+          try {
+            for (String key : keyList) {
+              reads.add(readAsync(key));
+            }
+          } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
+          }
+          return Futures.transform(
+              Futures.allAsList(reads),
+              (results) -> {
+                Map<String, byte[]> values = new LinkedHashMap<>();
+                for (int i = 0; i < keyList.size(); i++) {
+                  values.put(keyList.get(i), Objects.requireNonNull(results).get(i));
+                }
+                return values;
+              },
+              MoreExecutors.directExecutor());
+        });
   }
 
   @Override
   public ListenableFuture<byte[]> put(String key, @Nullable byte[] value) {
+    return put(key, value, durability);
+  }
+
+  @Override
+  public ListenableFuture<ByteBuffer> putBuffer(String key, @Nullable ByteBuffer value) {
+    return Futures.transform(
+        put(key, toOwnedBytes(value)),
+        (v) -> ByteBuffer.wrap(Objects.requireNonNull(v)).asReadOnlyBuffer(),
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public ListenableFuture<ValueOutputStream> openOutputStream(String key) {
     requireOpen();
-    return Futures.submitAsync(
+    return submit(
         () -> {
           Exception isDead = isDead();
           if (isDead != null) {
             return Futures.immediateFailedFuture(isDead);
           }
-          if (value == null || value.length == 0) {
-            cache.put(key, EMPTY_BYTES);
-            deleteFile(key);
-            return Futures.immediateFuture(EMPTY_BYTES);
-          } else {
-            cache.put(key, value);
-            try {
-              writeFile(key, value);
-            } catch (IOException e) {
-              return Futures.immediateFailedFuture(e);
+          File directory =
+              new File(Objects.requireNonNull(namespacedDirectory), STAGING_DIRECTORY_NAME);
+          try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+              throw new IOException("Failed to create directory " + directory);
             }
-            return Futures.immediateFuture(value);
+            File file = File.createTempFile("value", ".new", directory);
+            return Futures.immediateFuture(new StagedValueStream(key, file));
+          } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
           }
-        },
-        orderedIoExecutor);
+        });
+  }
+
+  @Override
+  public ListenableFuture<byte[]> put(String key, @Nullable byte[] value, Durability durability) {
+    requireOpen();
+    synchronized (batchLock) {
+      queueWrite(key);
+      return openBatch().add(key, value, durability);
+    }
+  }
+
+  @Override
+  public ListenableFuture<byte[]> update(String key, Function<byte[], byte[]> function) {
+    requireOpen();
+    synchronized (batchLock) {
+      queueWrite(key);
+      return submit(() -> applyUpdate(key, function));
+    }
+  }
+
+  @Override
+  public ListenableFuture<Boolean> compareAndSet(
+      String key, @Nullable byte[] expect, @Nullable byte[] update) {
+    byte[] expected = expect == null ? EMPTY_BYTES : expect;
+    boolean[] matched = new boolean[1];
+    return Futures.transform(
+        update(
+            key,
+            (current) -> {
+              matched[0] = Arrays.equals(current, expected);
+              return matched[0] ? update : current;
+            }),
+        (v) -> matched[0],
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public ListenableFuture<Void> putAll(Map<String, byte[]> values) {
+    requireOpen();
+    synchronized (batchLock) {
+      for (String key : values.keySet()) {
+        queueWrite(key);
+      }
+      return openBatch().addAll(values, durability);
+    }
+  }
+
+  @Override
+  public ListenableFuture<Void> commit(Transaction transaction) {
+    requireOpen();
+    Map<String, byte[]> writes = transaction.getWrites();
+    synchronized (batchLock) {
+      for (String key : writes.keySet()) {
+        queueWrite(key);
+      }
+      // Synced writes of a batch are committed atomically by the storage.
+      return openBatch().addAll(writes, Durability.SYNC);
+    }
+  }
+
+  @Override
+  public ListenableFuture<Void> removeAll(Collection<String> keys) {
+    Map<String, byte[]> removals = new HashMap<>();
+    for (String key : keys) {
+      removals.put(key, null);
+    }
+    return putAll(removals);
   }
 
   @Override
@@ -169,50 +436,130 @@ final class SimpleStoreImpl implements SimpleStore {
   }
 
   @Override
-  public ListenableFuture<Void> clear() {
+  public ListenableFuture<List<String>> keys() {
+    return keysWithPrefix("");
+  }
+
+  @Override
+  public ListenableFuture<List<String>> keysWithPrefix(String prefix) {
     requireOpen();
-    return Futures.submitAsync(
+    return submit(
         () -> {
           Exception isDead = isDead();
           if (isDead != null) {
             return Futures.immediateFailedFuture(isDead);
           }
+          drainStripes();
           try {
-            File[] files = Objects.requireNonNull(namespacedDirectory).listFiles(File::isFile);
-            if (files != null && files.length > 0) {
-              for (File f : files) {
-                //noinspection ResultOfMethodCallIgnored
-                f.delete();
+            return Futures.immediateFuture(indexedKeys(prefix));
+          } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
+          }
+        });
+  }
+
+  @Override
+  public ListenableFuture<Void> scan(String prefix, EntryVisitor visitor) {
+    requireOpen();
+    return submit(
+        () -> {
+          Exception isDead = isDead();
+          if (isDead != null) {
+            return Futures.immediateFailedFuture(isDead);
+          }
+          drainStripes();
+          try {
+            for (String key : indexedKeys(prefix)) {
+              // Don't fill the memory cache, so a scan does not evict the working set.
+              byte[] value = cache.get(key);
+              if (value == null) {
+                value = awaitRead(key);
+              }
+              if (value == null) {
+                value = storage().read(key);
+              }
+              if (value != null && value.length > 0) {
+                visitor.visit(key, value);
               }
             }
-            //noinspection ResultOfMethodCallIgnored
-            namespacedDirectory.delete();
-            cache.clear();
-          } catch (Exception e) {
+          } catch (IOException e) {
             return Futures.immediateFailedFuture(e);
           }
           return Futures.immediateFuture(null);
-        },
-        orderedIoExecutor);
+        });
+  }
+
+  @Override
+  public ListenableFuture<Void> clear() {
+    requireOpen();
+    synchronized (batchLock) {
+      queuedClears++;
+      ListenableFuture<Void> cleared = submit(this::clearNow);
+      cleared.addListener(
+          () -> {
+            synchronized (batchLock) {
+              queuedClears--;
+            }
+          },
+          MoreExecutors.directExecutor());
+      return cleared;
+    }
+  }
+
+  /** Only call from the orderedIoExecutor. */
+  private ListenableFuture<Void> clearNow() {
+    Exception isDead = isDead();
+    if (isDead != null) {
+      return Futures.immediateFailedFuture(isDead);
+    }
+    keyIndex = null;
+    awaitReads();
+    drainStripes();
+    try {
+      storage().clear();
+      cache.clear();
+    } catch (Exception e) {
+      return Futures.immediateFailedFuture(e);
+    }
+    keyIndex = new TreeSet<>();
+    return Futures.immediateFuture(null);
   }
 
   @Override
   public ListenableFuture<Void> deleteAllNow() {
     SimpleStoreFactory.flushAndClearRecursive(this);
 
-    return Futures.submitAsync(
+    return submit(
         () -> {
           if (namespacedDirectory != null) {
             recursiveDelete(namespacedDirectory);
           }
           return Futures.immediateFuture(null);
-        },
-        orderedIoExecutor);
+        });
   }
 
-  /** Only call from the orderedIoExecutor. */
+  @Override
+  public CacheStats getCacheStats() {
+    return cache.stats();
+  }
+
+  /** Drops the memory cache and any open storage state. Only call from the orderedIoExecutor. */
   void clearCache() {
+    awaitReads();
+    drainStripes();
     cache.clear();
+    keyIndex = null;
+    if (storage != null) {
+      storage.close();
+    }
+  }
+
+  /**
+   * Evict least recently used values until the memory cache holds at most the given fraction of its
+   * current size. Runs after every operation enqueued before it.
+   */
+  void trimCache(float retainFraction) {
+    execute(() -> cache.trimToSize((long) (cache.sizeBytes() * retainFraction)));
   }
 
   /**
@@ -222,7 +569,7 @@ final class SimpleStoreImpl implements SimpleStore {
     if (!flush.compareAndSet(null, exception)) {
       throw new IllegalStateException();
     }
-    orderedIoExecutor.execute(
+    execute(
         () -> {
           runnable.run();
           flush.set(null);
@@ -241,6 +588,23 @@ final class SimpleStoreImpl implements SimpleStore {
     namespacedDirectory = newLocation;
   }
 
+  /** The remaining bytes of a buffer, sharing its array when they span all of it. */
+  @Nullable
+  @VisibleForTesting
+  static byte[] toOwnedBytes(@Nullable ByteBuffer value) {
+    if (value == null || !value.hasRemaining()) {
+      return null;
+    }
+    if (value.hasArray()
+        && value.arrayOffset() + value.position() == 0
+        && value.remaining() == value.array().length) {
+      return value.array();
+    }
+    byte[] bytes = new byte[value.remaining()];
+    value.duplicate().get(bytes);
+    return bytes;
+  }
+
   private static void recursiveDelete(File directory) {
     File[] files = directory.listFiles();
     if (files != null) {
@@ -255,7 +619,15 @@ final class SimpleStoreImpl implements SimpleStore {
   @Override
   public void close() {
     if (available.compareAndSet(OPEN, CLOSED)) {
-      orderedIoExecutor.execute(() -> SimpleStoreFactory.tombstone(SimpleStoreImpl.this));
+      execute(
+          () -> {
+            awaitReads();
+            drainStripes();
+            if (storage != null) {
+              storage.close();
+            }
+            SimpleStoreFactory.tombstone(SimpleStoreImpl.this);
+          });
     }
   }
 
@@ -267,7 +639,7 @@ final class SimpleStoreImpl implements SimpleStore {
 
   @VisibleForTesting
   Executor getOrderedExecutor() {
-    return orderedIoExecutor;
+    return this::execute;
   }
 
   boolean tombstone() {
@@ -278,6 +650,10 @@ final class SimpleStoreImpl implements SimpleStore {
     return namespace;
   }
 
+  boolean isCritical() {
+    return critical;
+  }
+
   boolean openIfClosed() {
     return available.compareAndSet(CLOSED, OPEN);
   }
@@ -291,28 +667,763 @@ final class SimpleStoreImpl implements SimpleStore {
     }
   }
 
-  private void deleteFile(String key) {
-    File baseFile = new File(namespacedDirectory, key);
-    AtomicFile file = new AtomicFile(baseFile);
-    file.delete();
+  /** Get the batch queued puts join, enqueueing a new one if needed. */
+  @GuardedBy("batchLock")
+  private WriteBatch openBatch() {
+    WriteBatch batch = openBatch;
+    if (batch == null) {
+      WriteBatch created = new WriteBatch();
+      orderedIoExecutor.execute(() -> commitBatch(created));
+      openBatch = created;
+      batch = created;
+    }
+    return batch;
+  }
+
+  /** Run a task on the ordered executor after every operation enqueued before it. */
+  private void execute(Runnable runnable) {
+    synchronized (batchLock) {
+      // Later writes must not join a batch that runs before this task.
+      openBatch = null;
+      orderedIoExecutor.execute(runnable);
+    }
+  }
+
+  /** Submit an operation to the ordered executor after every operation enqueued before it. */
+  private <T> ListenableFuture<T> submit(AsyncCallable<T> callable) {
+    synchronized (batchLock) {
+      openBatch = null;
+      return Futures.submitAsync(callable, orderedIoExecutor);
+    }
   }
 
+  /**
+   * Write a batch of queued puts and commit them with a single sync of the storage. Puts superseded
+   * by a later put to the same key in the batch never reach storage. Only call from the
+   * orderedIoExecutor.
+   */
+  private void commitBatch(WriteBatch batch) {
+    synchronized (batchLock) {
+      if (openBatch == batch) {
+        openBatch = null;
+      }
+    }
+    Exception isDead = isDead();
+    if (isDead != null) {
+      releaseWrites(batch.writes);
+      batch.fail(isDead);
+      return;
+    }
+    try {
+      for (String key : batch.latest.keySet()) {
+        // A read in flight must not see the write, or reorder a get before it.
+        awaitRead(key);
+      }
+      if (stripes != null) {
+        // Bulk puts and transactions are committed as a whole, once every stripe is idle.
+        if (batch.bulk.isEmpty() && commitOnStripes(batch)) {
+          return;
+        }
+        drainStripes();
+      }
+      for (PendingWrite write : batch.latest.values()) {
+        if (write.value == null || write.value.length == 0) {
+          cache.put(write.key, EMPTY_BYTES);
+          storage().delete(write.key, write.durability);
+        } else {
+          cache.put(write.key, write.value);
+          storage().write(write.key, write.value, write.durability);
+        }
+      }
+      storage().sync();
+    } catch (IOException e) {
+      // Drop whatever is still staged and let reads go back to disk.
+      storage().close();
+      keyIndex = null;
+      for (String key : batch.latest.keySet()) {
+        cache.remove(key);
+      }
+      releaseWrites(batch.writes);
+      batch.fail(e);
+      return;
+    }
+    NavigableSet<String> keys = keyIndex;
+    if (keys != null) {
+      for (PendingWrite write : batch.latest.values()) {
+        if (write.value == null || write.value.length == 0) {
+          keys.remove(write.key);
+        } else {
+          keys.add(write.key);
+        }
+      }
+    }
+    releaseWrites(batch.writes);
+    batch.succeed();
+  }
+
+  /**
+   * Replace the value of a key with an equivalent one, such as a string in another encoding, unless
+   * it was changed meanwhile. Best effort, a failure leaves the previous value.
+   */
+  private void rewriteIfUnchanged(String key, byte[] expected, byte[] replacement) {
+    execute(
+        () -> {
+          if (isDead() != null) {
+            return;
+          }
+          drainStripes();
+          try {
+            if (!Arrays.equals(read(key), expected)) {
+              return;
+            }
+            // Losing the rewrite keeps the equivalent value, no need to sync it.
+            Durability rewrite =
+                durability == Durability.BEST_EFFORT ? Durability.BEST_EFFORT : Durability.ATOMIC;
+            storage().write(key, replacement, rewrite);
+            storage().sync();
+            cache.put(key, replacement);
+          } catch (IOException e) {
+            storage().close();
+            keyIndex = null;
+            cache.remove(key);
+            Log.w(getClass().getName(), "Failed to rewrite " + key, e);
+          }
+        });
+  }
+
+  /**
+   * Replace a key with a value streamed to disk. Only call from the orderedIoExecutor.
+   *
+   * @param file holding the value, taken by this
+   */
+  private ListenableFuture<Void> commitStream(String key, File file) {
+    try {
+      Exception isDead = isDead();
+      if (isDead != null) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        return Futures.immediateFailedFuture(isDead);
+      }
+      // A read in flight must not see the write, or reorder a get before it.
+      awaitRead(key);
+      drainStripes();
+      boolean removed = file.length() == 0;
+      try {
+        if (removed) {
+          //noinspection ResultOfMethodCallIgnored
+          file.delete();
+          storage().delete(key, durability);
+          storage().sync();
+          cache.put(key, EMPTY_BYTES);
+        } else {
+          storage().commitFile(key, file, durability);
+          // Read back from disk when needed, streamed values are often too large to keep.
+          cache.remove(key);
+        }
+      } catch (IOException e) {
+        storage().close();
+        keyIndex = null;
+        cache.remove(key);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        return Futures.immediateFailedFuture(e);
+      }
+      NavigableSet<String> keys = keyIndex;
+      if (keys != null) {
+        if (removed) {
+          keys.remove(key);
+        } else {
+          keys.add(key);
+        }
+      }
+      return Futures.immediateFuture(null);
+    } finally {
+      releaseWrite(key);
+    }
+  }
+
+  /**
+   * Read, modify and write a key without letting any other operation in between. Only call from
+   * the orderedIoExecutor.
+   */
+  private ListenableFuture<byte[]> applyUpdate(String key, Function<byte[], byte[]> function) {
+    try {
+      Exception isDead = isDead();
+      if (isDead != null) {
+        return Futures.immediateFailedFuture(isDead);
+      }
+      // A read in flight must not see the write, or reorder a get before it.
+      awaitRead(key);
+      drainStripes();
+      byte[] current;
+      byte[] updated;
+      try {
+        current = read(key);
+        updated = function.apply(current);
+      } catch (IOException | RuntimeException e) {
+        return Futures.immediateFailedFuture(e);
+      }
+      if (updated == current) {
+        return Futures.immediateFuture(current);
+      }
+      byte[] stored = updated == null || updated.length == 0 ? EMPTY_BYTES : updated;
+      boolean removed = stored.length == 0;
+      try {
+        if (removed) {
+          storage().delete(key, durability);
+        } else {
+          storage().write(key, stored, durability);
+        }
+        storage().sync();
+        cache.put(key, stored);
+      } catch (IOException e) {
+        storage().close();
+        keyIndex = null;
+        cache.remove(key);
+        return Futures.immediateFailedFuture(e);
+      }
+      NavigableSet<String> keys = keyIndex;
+      if (keys != null) {
+        if (removed) {
+          keys.remove(key);
+        } else {
+          keys.add(key);
+        }
+      }
+      return Futures.immediateFuture(stored);
+    } finally {
+      releaseWrite(key);
+    }
+  }
+
+  @GuardedBy("batchLock")
+  private void queueWrite(String key) {
+    Integer queued = queuedWrites.get(key);
+    queuedWrites.put(key, queued == null ? 1 : queued + 1);
+  }
+
+  /** Let cache hits of the keys of settled writes skip the queue again. */
+  private void releaseWrites(List<PendingWrite> writes) {
+    for (PendingWrite write : writes) {
+      releaseWrite(write.key);
+    }
+  }
+
+  private void releaseWrite(String key) {
+    synchronized (batchLock) {
+      Integer queued = queuedWrites.get(key);
+      if (queued == null || queued <= 1) {
+        queuedWrites.remove(key);
+      } else {
+        queuedWrites.put(key, queued - 1);
+      }
+    }
+  }
+
+  /** Only call from the orderedIoExecutor. */
+  private NamespaceStorage storage() {
+    return Objects.requireNonNull(storage);
+  }
+
+  /** Only call from the orderedIoExecutor. */
+  private NavigableSet<String> keyIndex() throws IOException {
+    NavigableSet<String> keys = keyIndex;
+    if (keys == null) {
+      keys = new TreeSet<>(storage().keys());
+      keyIndex = keys;
+    }
+    return keys;
+  }
+
+  /** Keys starting with a prefix in ascending order. Only call from the orderedIoExecutor. */
+  private List<String> indexedKeys(String prefix) throws IOException {
+    List<String> keys = new ArrayList<>();
+    for (String key : keyIndex().tailSet(prefix, true)) {
+      if (!key.startsWith(prefix)) {
+        break;
+      }
+      keys.add(key);
+    }
+    return keys;
+  }
+
+  /**
+   * Read a key through the key index and memory cache. Only call from the orderedIoExecutor.
+   */
+  private byte[] read(String key) throws IOException {
+    if (isAbsent(key)) {
+      return EMPTY_BYTES;
+    }
+    byte[] value = cache.get(key);
+    if (value == null) {
+      value = awaitRead(key);
+    }
+    if (value == null) {
+      value = readStorage(key);
+    }
+    return value;
+  }
+
+  /**
+   * Read a key like {@link #read(String)}, but leave the disk read to the IO executor when reads
+   * are parallel, so the queue is free for other keys meanwhile. Only call from the
+   * orderedIoExecutor.
+   */
+  private ListenableFuture<byte[]> readAsync(String key) throws IOException {
+    if (stripes != null && stripeTails.containsKey(key)) {
+      // After the reads and writes of the key still on its stripe.
+      return readOnStripe(key);
+    }
+    if (isAbsent(key)) {
+      return Futures.immediateFuture(EMPTY_BYTES);
+    }
+    byte[] value = cache.get(key);
+    if (value != null) {
+      return Futures.immediateFuture(value);
+    }
+    ListenableFuture<byte[]> pending = pendingReads.get(key);
+    if (pending == null) {
+      if (stripes != null) {
+        return readOnStripe(key);
+      }
+      Callable<byte[]> reader = parallelReads ? storage().concurrentReader(key) : null;
+      if (reader == null) {
+        return Futures.immediateFuture(readStorage(key));
+      }
+      pending = startRead(key, reader);
+    }
+    // Wait for this key only, leaving the queue free for others.
+    return Futures.nonCancellationPropagating(pending);
+  }
+
+  /**
+   * Write each key of a batch of single puts on its stripe, without waiting for other keys. Only
+   * call from the orderedIoExecutor.
+   *
+   * @return false if the storage requires the batch to be staged and synced instead
+   */
+  private boolean commitOnStripes(WriteBatch batch) throws IOException {
+    List<Callable<Void>> writers = new ArrayList<>();
+    for (PendingWrite write : batch.latest.values()) {
+      byte[] value = write.value;
+      Callable<Void> writer =
+          storage()
+              .concurrentWriter(
+                  write.key, value == null || value.length == 0 ? null : value, write.durability);
+      if (writer == null) {
+        return false;
+      }
+      writers.add(writer);
+    }
+    Map<String, List<PendingWrite>> writesByKey = new HashMap<>();
+    for (PendingWrite write : batch.writes) {
+      List<PendingWrite> writes = writesByKey.get(write.key);
+      if (writes == null) {
+        writes = new ArrayList<>();
+        writesByKey.put(write.key, writes);
+      }
+      writes.add(write);
+    }
+    int i = 0;
+    for (PendingWrite write : batch.latest.values()) {
+      List<PendingWrite> writes = Objects.requireNonNull(writesByKey.get(write.key));
+      // Reads wait for the write on the stripe instead.
+      cache.remove(write.key);
+      runOnStripe(
+          write.key, writers.get(i++), (task, latest) -> finishWrite(write, writes, task, latest));
+    }
+    return true;
+  }
+
+  /**
+   * Settle the puts to a key once its write on the stripe is done. Only call from the
+   * orderedIoExecutor.
+   */
+  private void finishWrite(
+      PendingWrite write, List<PendingWrite> writes, ListenableFuture<Void> task, boolean latest) {
+    try {
+      Futures.getDone(task);
+    } catch (ExecutionException e) {
+      cache.remove(write.key);
+      keyIndex = null;
+      releaseWrites(writes);
+      for (PendingWrite w : writes) {
+        if (w.future != null) {
+          w.future.setException(e.getCause());
+        }
+      }
+      return;
+    }
+    byte[] value = write.value;
+    boolean removed = value == null || value.length == 0;
+    if (latest) {
+      cache.put(write.key, value == null || removed ? EMPTY_BYTES : value);
+    }
+    NavigableSet<String> keys = keyIndex;
+    if (keys != null) {
+      if (removed) {
+        keys.remove(write.key);
+      } else {
+        keys.add(write.key);
+      }
+    }
+    releaseWrites(writes);
+    for (PendingWrite w : writes) {
+      if (w.future != null) {
+        byte[] written = w.value;
+        w.future.set(written == null || written.length == 0 ? EMPTY_BYTES : written);
+      }
+    }
+  }
+
+  /**
+   * Read a key on its stripe, after the reads and writes of it enqueued before. Only call from the
+   * orderedIoExecutor.
+   */
+  private ListenableFuture<byte[]> readOnStripe(String key) throws IOException {
+    Callable<byte[]> reader = storage().concurrentReader(key);
+    if (reader == null) {
+      drainStripes();
+      return Futures.immediateFuture(read(key));
+    }
+    ListenableFuture<byte[]> read =
+        runOnStripe(
+            key,
+            () -> {
+              byte[] value = reader.call();
+              return value == null ? EMPTY_BYTES : value;
+            },
+            (task, latest) -> {
+              if (!latest) {
+                return;
+              }
+              try {
+                cache.put(key, Futures.getDone(task));
+              } catch (ExecutionException e) {
+                // Read again on the next get.
+              }
+            });
+    return Futures.nonCancellationPropagating(read);
+  }
+
+  /**
+   * Run a disk read or write of a key on its stripe, after those of the stripe enqueued before, and
+   * finish it on the ordered executor. Only call from the orderedIoExecutor.
+   */
+  private <T> ListenableFuture<T> runOnStripe(
+      String key, Callable<T> callable, StripeCompletion<T> completion) {
+    ListenableFutureTask<T> task = ListenableFutureTask.create(callable);
+    stripeTasks.put(
+        task,
+        () -> {
+          boolean latest = stripeTails.get(key) == task;
+          if (latest) {
+            stripeTails.remove(key);
+          }
+          completion.complete(task, latest);
+        });
+    stripeTails.put(key, task);
+    task.addListener(
+        () -> orderedIoExecutor.execute(() -> finishStripeTask(task)),
+        MoreExecutors.directExecutor());
+    stripeOf(key).execute(task);
+    return task;
+  }
+
+  @VisibleForTesting
+  Executor stripeOf(String key) {
+    Executor[] stripes = Objects.requireNonNull(this.stripes);
+    return stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length];
+  }
+
+  /** Finish a done stripe task unless already finished. Only call from the orderedIoExecutor. */
+  private void finishStripeTask(ListenableFuture<?> task) {
+    Runnable finish = stripeTasks.remove(task);
+    if (finish != null) {
+      finish.run();
+    }
+  }
+
+  /**
+   * Wait for every task on the stripes and finish them, so an operation spanning keys sees them
+   * all. Only call from the orderedIoExecutor.
+   *
+   * <p>Tasks are drained in the order they were enqueued, so every earlier task of a stripe is done
+   * by the time one is reached. One that has not started yet is run here rather than waited for, so
+   * the ordered executor never blocks its IO thread on work queued behind it on the same executor.
+   */
+  private void drainStripes() {
+    while (!stripeTasks.isEmpty()) {
+      ListenableFutureTask<?> task = stripeTasks.keySet().iterator().next();
+      // No-op if the stripe already started it.
+      task.run();
+      try {
+        Uninterruptibles.getUninterruptibly(task);
+      } catch (ExecutionException e) {
+        // Handled as it is finished.
+      }
+      finishStripeTask(task);
+    }
+  }
+
+  /** Whether the key index rules out the key. Only call from the orderedIoExecutor. */
+  private boolean isAbsent(String key) throws IOException {
+    // Known without touching the disk.
+    return !keyIndex().contains(key) && storage().isListable(key);
+  }
+
+  /** Read a key from storage into the memory cache. Only call from the orderedIoExecutor. */
+  private byte[] readStorage(String key) throws IOException {
+    byte[] value = storage().read(key);
+    if (value == null || value.length == 0) {
+      value = EMPTY_BYTES;
+    }
+    cache.put(key, value);
+    return value;
+  }
+
+  /** Start reading every key into the memory cache. Only call from the orderedIoExecutor. */
+  private void preload() throws IOException {
+    for (String key : keyIndex()) {
+      Callable<byte[]> reader = storage().concurrentReader(key);
+      if (reader == null) {
+        read(key);
+      } else {
+        startRead(key, reader);
+      }
+    }
+  }
+
+  /**
+   * Read a key on the IO executor, caching the value once done. Writes to the key wait for it to
+   * finish. Only call from the orderedIoExecutor.
+   */
+  private ListenableFuture<byte[]> startRead(String key, Callable<byte[]> reader) {
+    ListenableFutureTask<byte[]> read =
+        ListenableFutureTask.create(
+            () -> {
+              byte[] value = reader.call();
+              return value == null ? EMPTY_BYTES : value;
+            });
+    pendingReads.put(key, read);
+    read.addListener(
+        () -> orderedIoExecutor.execute(() -> finishRead(key, read)),
+        MoreExecutors.directExecutor());
+    SimpleStoreConfig.getIOExecutor().execute(read);
+    return read;
+  }
+
+  /** Cache a finished read unless already taken. Only call from the orderedIoExecutor. */
+  private void finishRead(String key, ListenableFuture<byte[]> read) {
+    if (pendingReads.get(key) == read) {
+      awaitRead(key);
+    }
+  }
+
+  /**
+   * Wait for the read of a key in flight, if any, and cache its value. A read the IO executor has
+   * not started yet is run here instead, so a bounded IO executor can't deadlock on it. Only call
+   * from the orderedIoExecutor.
+   *
+   * @return value, or null if there was no read in flight or it failed
+   */
   @Nullable
-  private byte[] readFile(String key) throws IOException {
-    File baseFile = new File(namespacedDirectory, key);
-    AtomicFile file = new AtomicFile(baseFile);
-    if (baseFile.exists()) {
-      return file.readFully();
-    } else {
+  private byte[] awaitRead(String key) {
+    ListenableFutureTask<byte[]> read = pendingReads.remove(key);
+    if (read == null) {
       return null;
     }
+    // No-op if the IO executor already started it.
+    read.run();
+    byte[] value;
+    try {
+      value = Uninterruptibles.getUninterruptibly(read);
+    } catch (ExecutionException e) {
+      // Read again from storage.
+      return null;
+    }
+    cache.put(key, value);
+    return value;
+  }
+
+  /** Wait for every read still in flight. Only call from the orderedIoExecutor. */
+  private void awaitReads() {
+    for (String key : new ArrayList<>(pendingReads.keySet())) {
+      awaitRead(key);
+    }
+  }
+
+  /** Settles a task run on a stripe. */
+  private interface StripeCompletion<T> {
+    /**
+     * @param task which is done
+     * @param latest whether no later task of the key was enqueued
+     */
+    void complete(ListenableFuture<T> task, boolean latest);
+  }
+
+  /** Writes a value to a staging file, then enqueues it to replace the key once closed. */
+  private final class StagedValueStream extends ValueOutputStream {
+    private final String key;
+    private final File file;
+    private final FileOutputStream out;
+    private final SettableFuture<Void> committed = SettableFuture.create();
+    private boolean closed;
+
+    StagedValueStream(String key, File file) throws IOException {
+      this.key = key;
+      this.file = file;
+      this.out = new FileOutputStream(file);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public ListenableFuture<Void> committed() {
+      return Futures.nonCancellationPropagating(committed);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (durability == Durability.SYNC) {
+          // Synced here so the commit on the ordered executor is only a rename.
+          out.getFD().sync();
+        }
+        out.close();
+      } catch (IOException e) {
+        discard();
+        committed.setException(e);
+        throw e;
+      }
+      if (available.get() > OPEN) {
+        discard();
+        committed.setException(new StoreClosedException());
+        return;
+      }
+      synchronized (batchLock) {
+        queueWrite(key);
+        committed.setFuture(submit(() -> commitStream(key, file)));
+      }
+    }
+
+    @Override
+    public void abort() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      discard();
+      committed.cancel(false);
+    }
+
+    private void discard() {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // Deleted regardless.
+      }
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
   }
 
-  private void writeFile(String key, byte[] value) throws IOException {
-    File baseFile = new File(namespacedDirectory, key);
-    AtomicFile file = new AtomicFile(baseFile);
-    FileOutputStream writer = file.startWrite();
-    writer.write(value);
-    file.finishWrite(writer);
+  /** Puts queued back to back on the ordered executor, committed together. */
+  private static final class WriteBatch {
+    // Every put in order, each completing with its own value.
+    final List<PendingWrite> writes = new ArrayList<>();
+    // The last put to each key, the only ones written to storage.
+    final Map<String, PendingWrite> latest = new LinkedHashMap<>();
+
+    // Completions of bulk puts, whose writes have no future of their own.
+    final List<SettableFuture<Void>> bulk = new ArrayList<>();
+
+    ListenableFuture<byte[]> add(String key, @Nullable byte[] value, Durability durability) {
+      SettableFuture<byte[]> future = SettableFuture.create();
+      stage(key, value, durability, future);
+      return future;
+    }
+
+    ListenableFuture<Void> addAll(Map<String, byte[]> values, Durability durability) {
+      for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+        stage(entry.getKey(), entry.getValue(), durability, null);
+      }
+      SettableFuture<Void> future = SettableFuture.create();
+      bulk.add(future);
+      return future;
+    }
+
+    private void stage(
+        String key,
+        @Nullable byte[] value,
+        Durability durability,
+        @Nullable SettableFuture<byte[]> future) {
+      PendingWrite superseded = latest.remove(key);
+      if (superseded != null && superseded.durability.compareTo(durability) < 0) {
+        // The superseded put only completes once this one is as durable as it asked for.
+        durability = superseded.durability;
+      }
+      PendingWrite write = new PendingWrite(key, value, durability, future);
+      writes.add(write);
+      latest.put(key, write);
+    }
+
+    void succeed() {
+      for (PendingWrite write : writes) {
+        if (write.future != null) {
+          byte[] value = write.value;
+          write.future.set(value == null || value.length == 0 ? EMPTY_BYTES : value);
+        }
+      }
+      for (SettableFuture<Void> future : bulk) {
+        future.set(null);
+      }
+    }
+
+    void fail(Exception exception) {
+      for (PendingWrite write : writes) {
+        if (write.future != null) {
+          write.future.setException(exception);
+        }
+      }
+      for (SettableFuture<Void> future : bulk) {
+        future.setException(exception);
+      }
+    }
+  }
+
+  private static final class PendingWrite {
+    final String key;
+    @Nullable final byte[] value;
+    final Durability durability;
+    @Nullable final SettableFuture<byte[]> future;
+
+    PendingWrite(
+        String key,
+        @Nullable byte[] value,
+        Durability durability,
+        @Nullable SettableFuture<byte[]> future) {
+      this.key = key;
+      this.value = value;
+      this.durability = durability;
+      this.future = future;
+    }
   }
 }
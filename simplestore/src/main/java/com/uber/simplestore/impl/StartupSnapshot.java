@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import android.util.Log;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * Packed copy of the values of a {@link FilePerKeyStorage} namespace read while it starts up, so
+ * the next launch loads them with one sequential read instead of opening each key file.
+ *
+ * <p>Every value is stored with the modification time its key file had when read, and only trusted
+ * while the file still has that time and length. Keys that go unread for {@link #LAUNCHES}
+ * launches are dropped. The snapshot is rewritten once the startup window ends, or when closed
+ * before that.
+ *
+ * <p>Methods are synchronized, as values read concurrently are recorded from any thread.
+ */
+final class StartupSnapshot {
+
+  static final String FILE_NAME = ".simplestore-snapshot";
+  static final long WINDOW_MILLIS = 5000;
+  static final int LAUNCHES = 3;
+
+  private static final String LOG_TAG = "StartupSnapshot";
+  private static final int MAGIC = 0x53535331;
+  private static final int MAX_BYTES = 256 * 1024;
+  // Coarser than the modification time granularity of any filesystem the store may use.
+  private static final long RACY_MILLIS = 2000;
+
+  private final File directory;
+  private final AtomicFile file;
+  private final long windowEndNanos;
+  // Trusted values from the last snapshot, until this one is written.
+  private final Map<String, Entry> loaded = new HashMap<>();
+  // Values read during the startup window, in read order.
+  private final Map<String, Entry> recorded = new LinkedHashMap<>();
+  private long recordedBytes;
+  private boolean isLoaded;
+  private boolean written;
+
+  StartupSnapshot(File directory, long windowMillis) {
+    this.directory = directory;
+    this.file = new AtomicFile(new File(directory, FILE_NAME));
+    this.windowEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+  }
+
+  /** Get the value of a key from the last snapshot, or null if it does not hold a trusted one. */
+  @Nullable
+  synchronized byte[] get(String key) {
+    if (!isLoaded) {
+      isLoaded = true;
+      load();
+    }
+    Entry entry = loaded.get(key);
+    if (entry == null) {
+      return null;
+    }
+    record(key, entry);
+    return entry.value;
+  }
+
+  /** Record a value read from a key file, if still within the startup window. */
+  synchronized void record(String key, byte[] value) {
+    File keyFile = FilePerKeyStorage.keyFile(directory, key);
+    if (isRecording()) {
+      record(key, new Entry(value, keyFile.lastModified(), 0));
+    }
+  }
+
+  /** Forget a key about to change. */
+  synchronized void invalidate(String key) {
+    Entry entry = recorded.remove(key);
+    if (entry != null) {
+      recordedBytes -= entry.value.length;
+    }
+    loaded.remove(key);
+  }
+
+  /** Write the snapshot once the startup window ends. */
+  synchronized void writeIfWindowEnded() {
+    if (!written && System.nanoTime() - windowEndNanos >= 0) {
+      write();
+    }
+  }
+
+  /** Write the snapshot unless already written by this launch, and release its values. */
+  synchronized void write() {
+    if (written) {
+      return;
+    }
+    written = true;
+    if (!isLoaded) {
+      // Nothing was read, leave the snapshot for a launch that does.
+      return;
+    }
+    Map<String, Entry> entries = new LinkedHashMap<>();
+    long bytes = 0;
+    // A file changed again within the same timestamp would look unchanged, so skip recent ones.
+    long racy = System.currentTimeMillis() - RACY_MILLIS;
+    for (Map.Entry<String, Entry> e : recorded.entrySet()) {
+      if (e.getValue().modified < racy) {
+        entries.put(e.getKey(), e.getValue());
+        bytes += e.getValue().value.length;
+      }
+    }
+    for (Map.Entry<String, Entry> e : loaded.entrySet()) {
+      Entry entry = e.getValue();
+      if (recorded.containsKey(e.getKey()) || entry.launches + 1 >= LAUNCHES) {
+        continue;
+      }
+      if (bytes + entry.value.length > MAX_BYTES) {
+        break;
+      }
+      entries.put(e.getKey(), new Entry(entry.value, entry.modified, entry.launches + 1));
+      bytes += entry.value.length;
+    }
+    loaded.clear();
+    recorded.clear();
+    recordedBytes = 0;
+    if (entries.isEmpty()) {
+      file.delete();
+      return;
+    }
+    // Written beside the namespace without creating it, so a namespace deleted or moved away in
+    // the meantime is not brought back.
+    File temp = new File(directory, FILE_NAME + ".new");
+    try {
+      byte[] data = encode(entries);
+      try (FileOutputStream stream = new FileOutputStream(temp)) {
+        stream.write(data);
+      }
+      // Validated when loaded, a lost snapshot only costs a slower start.
+      file.replaceWithin(temp);
+    } catch (IOException e) {
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+      if (directory.isDirectory()) {
+        Log.e(LOG_TAG, "Failed to write " + file.getBaseFile(), e);
+      }
+    }
+  }
+
+  /** Forget every value, as the namespace is emptied. */
+  synchronized void clear() {
+    loaded.clear();
+    recorded.clear();
+    recordedBytes = 0;
+  }
+
+  private boolean isRecording() {
+    return !written && System.nanoTime() - windowEndNanos < 0;
+  }
+
+  private void record(String key, Entry entry) {
+    if (!isRecording() || recorded.containsKey(key)) {
+      return;
+    }
+    if (recordedBytes + entry.value.length > MAX_BYTES) {
+      return;
+    }
+    recorded.put(key, new Entry(entry.value, entry.modified, 0));
+    recordedBytes += entry.value.length;
+  }
+
+  private void load() {
+    byte[] data;
+    try {
+      data = file.readFully();
+    } catch (FileNotFoundException e) {
+      return;
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Failed to read " + file.getBaseFile(), e);
+      return;
+    }
+    try {
+      Map<String, Entry> entries = decode(data);
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        Entry entry = e.getValue();
+        File keyFile = FilePerKeyStorage.keyFile(directory, e.getKey());
+        if (keyFile.lastModified() == entry.modified && keyFile.length() == entry.value.length) {
+          loaded.put(e.getKey(), entry);
+        }
+      }
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Dropping corrupt " + file.getBaseFile(), e);
+    }
+  }
+
+  private static byte[] encode(Map<String, Entry> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(entries.size());
+    for (Map.Entry<String, Entry> e : entries.entrySet()) {
+      byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+      Entry entry = e.getValue();
+      out.writeInt(key.length);
+      out.write(key);
+      out.writeLong(entry.modified);
+      out.writeInt(entry.launches);
+      out.writeInt(entry.value.length);
+      out.write(entry.value);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.writeLong(crc.getValue());
+    return bytes.toByteArray();
+  }
+
+  private static Map<String, Entry> decode(byte[] data) throws IOException {
+    if (data.length < 8) {
+      throw new IOException("Truncated snapshot");
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length - 8);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    in.skipBytes(data.length - 8);
+    if (in.readLong() != crc.getValue()) {
+      throw new IOException("Snapshot checksum mismatch");
+    }
+    in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Unknown snapshot format");
+    }
+    int count = in.readInt();
+    Map<String, Entry> entries = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      byte[] key = new byte[in.readInt()];
+      in.readFully(key);
+      long modified = in.readLong();
+      int launches = in.readInt();
+      byte[] value = new byte[in.readInt()];
+      in.readFully(value);
+      entries.put(new String(key, StandardCharsets.UTF_8), new Entry(value, modified, launches));
+    }
+    return entries;
+  }
+
+  private static final class Entry {
+    final byte[] value;
+    // Modification time of the key file holding the value.
+    final long modified;
+    // Launches since the key was last read.
+    final int launches;
+
+    Entry(byte[] value, long modified, int launches) {
+      this.value = value;
+      this.modified = modified;
+      this.launches = launches;
+    }
+  }
+}
@@ -17,6 +17,8 @@ package com.uber.simplestore.primitive;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.uber.simplestore.SimpleStore;
+import java.util.Collection;
+import java.util.Map;
 import javax.annotation.CheckReturnValue;
 
 /**
@@ -39,6 +41,17 @@ public interface PrimitiveSimpleStore extends SimpleStore {
   @CheckReturnValue
   ListenableFuture<Long> put(String key, long value);
 
+  /**
+   * Add to a long as a single step of the namespace's queue, so that concurrent increments are
+   * never lost. An absent key counts as 0.
+   *
+   * @param key of the counter
+   * @param delta to add, may be negative
+   * @return value after the increment
+   */
+  @CheckReturnValue
+  ListenableFuture<Long> increment(String key, long delta);
+
   @CheckReturnValue
   ListenableFuture<Boolean> getBoolean(String key);
 
@@ -52,7 +65,9 @@ public interface PrimitiveSimpleStore extends SimpleStore {
   ListenableFuture<Double> put(String key, double value);
 
   /**
-   * Retrieves a #{@link java.nio.charset.StandardCharsets#UTF_16BE} string.
+   * Retrieves a string stored in either {@link com.uber.simplestore.StringEncoding}: UTF-8 after
+   * its marker, otherwise legacy UTF-16BE. A legacy string starting like the marker reads as UTF-8,
+   * see {@link com.uber.simplestore.StringEncoding#UTF_8}.
    *
    * @param key to fetch from
    * @return value if present, otherwise ""
@@ -62,7 +77,8 @@ public interface PrimitiveSimpleStore extends SimpleStore {
   ListenableFuture<String> getString(String key);
 
   /**
-   * Store string as #{@link java.nio.charset.StandardCharsets#UTF_16BE}.
+   * Store string in the namespace's {@link com.uber.simplestore.StringEncoding}, UTF-16BE unless
+   * configured otherwise.
    *
    * <p>Putting "" will remove the value from disk.
    *
@@ -76,4 +92,50 @@ public interface PrimitiveSimpleStore extends SimpleStore {
   @CheckReturnValue
   @Override
   ListenableFuture<Void> remove(String key);
+
+  @CheckReturnValue
+  ListenableFuture<Map<String, Integer>> getAllInts(Collection<String> keys);
+
+  @CheckReturnValue
+  ListenableFuture<Void> putAllInts(Map<String, Integer> values);
+
+  @CheckReturnValue
+  ListenableFuture<Map<String, Long>> getAllLongs(Collection<String> keys);
+
+  @CheckReturnValue
+  ListenableFuture<Void> putAllLongs(Map<String, Long> values);
+
+  @CheckReturnValue
+  ListenableFuture<Map<String, Boolean>> getAllBooleans(Collection<String> keys);
+
+  @CheckReturnValue
+  ListenableFuture<Void> putAllBooleans(Map<String, Boolean> values);
+
+  @CheckReturnValue
+  ListenableFuture<Map<String, Double>> getAllDoubles(Collection<String> keys);
+
+  @CheckReturnValue
+  ListenableFuture<Void> putAllDoubles(Map<String, Double> values);
+
+  /**
+   * Retrieves several strings in a single operation, each stored in either {@link
+   * com.uber.simplestore.StringEncoding} as for {@link #getString(String)}.
+   *
+   * @param keys to fetch from
+   * @return value of every key, "" if absent
+   */
+  @CheckReturnValue
+  ListenableFuture<Map<String, String>> getAllStrings(Collection<String> keys);
+
+  /**
+   * Store several strings in the namespace's {@link com.uber.simplestore.StringEncoding} in a
+   * single operation.
+   *
+   * <p>Putting "" will remove the value from disk.
+   *
+   * @param values to store by key
+   * @return when complete
+   */
+  @CheckReturnValue
+  ListenableFuture<Void> putAllStrings(Map<String, String> values);
 }
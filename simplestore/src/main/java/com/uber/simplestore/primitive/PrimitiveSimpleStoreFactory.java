@@ -17,6 +17,7 @@ package com.uber.simplestore.primitive;
 
 import com.uber.simplestore.DirectoryProvider;
 import com.uber.simplestore.NamespaceConfig;
+import com.uber.simplestore.SimpleStore;
 import com.uber.simplestore.impl.SimpleStoreFactory;
 
 public final class PrimitiveSimpleStoreFactory {
@@ -26,7 +27,7 @@ public final class PrimitiveSimpleStoreFactory {
 
   public static PrimitiveSimpleStore create(
       DirectoryProvider directoryProvider, String namespace, NamespaceConfig config) {
-    return new PrimitiveSimpleStoreImpl(
-        SimpleStoreFactory.create(directoryProvider, namespace, config));
+    SimpleStore store = SimpleStoreFactory.create(directoryProvider, namespace, config);
+    return new PrimitiveSimpleStoreImpl(store, config.getStringEncoding());
   }
 }
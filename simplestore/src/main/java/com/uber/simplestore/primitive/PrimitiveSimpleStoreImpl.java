@@ -17,22 +17,57 @@ package com.uber.simplestore.primitive;
 
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 
+import com.google.common.base.Function;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.uber.simplestore.CacheStats;
+import com.uber.simplestore.Durability;
 import com.uber.simplestore.SimpleStore;
+import com.uber.simplestore.StringEncoding;
+import com.uber.simplestore.Transaction;
+import com.uber.simplestore.ValueOutputStream;
+import com.uber.simplestore.impl.DecodedValueCache;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 @SuppressWarnings("UnstableApiUsage")
 final class PrimitiveSimpleStoreImpl implements PrimitiveSimpleStore {
 
+  // Bounds the decoded values kept alongside the namespace's memory cache.
+  private static final long DECODED_BUDGET_BYTES = 128 * 1024;
+
+  // Shared instances, so that a decoded value is only reused for the same type.
+  private static final Function<byte[], Integer> INT_DECODER = PrimitiveSimpleStoreImpl::decodeInt;
+  private static final Function<byte[], Long> LONG_DECODER = PrimitiveSimpleStoreImpl::decodeLong;
+  private static final Function<byte[], Boolean> BOOLEAN_DECODER =
+      PrimitiveSimpleStoreImpl::decodeBoolean;
+  private static final Function<byte[], Double> DOUBLE_DECODER =
+      PrimitiveSimpleStoreImpl::decodeDouble;
+  private static final Function<byte[], String> STRING_DECODER =
+      (b) -> b != null && b.length > 0 ? StringEncoding.decode(b) : "";
+
   private final SimpleStore simpleStore;
+  private final StringEncoding stringEncoding;
+
+  private final DecodedValueCache decoded = new DecodedValueCache(DECODED_BUDGET_BYTES);
 
-  PrimitiveSimpleStoreImpl(SimpleStore simpleStore) {
+  PrimitiveSimpleStoreImpl(SimpleStore simpleStore, StringEncoding stringEncoding) {
     this.simpleStore = simpleStore;
+    this.stringEncoding = stringEncoding;
   }
 
   @Override
   public ListenableFuture<String> getString(String key) {
+    byte[] cached = simpleStore.getIfCached(key);
+    if (cached != null && (cached.length == 0 || StringEncoding.of(cached) == stringEncoding)) {
+      return getDecoded(key, cached, STRING_DECODER);
+    }
+    // Strings in another encoding are read through the store, which may rewrite them.
     return Futures.transform(
         simpleStore.getString(key), value -> value != null ? value : "", directExecutor());
   }
@@ -57,6 +92,11 @@ final class PrimitiveSimpleStoreImpl implements PrimitiveSimpleStore {
     return simpleStore.put(key, value);
   }
 
+  @Override
+  public ListenableFuture<byte[]> put(String key, @Nullable byte[] value, Durability durability) {
+    return simpleStore.put(key, value, durability);
+  }
+
   @Override
   public ListenableFuture<Boolean> contains(String key) {
     return simpleStore.contains(key);
@@ -64,115 +104,309 @@ final class PrimitiveSimpleStoreImpl implements PrimitiveSimpleStore {
 
   @Override
   public ListenableFuture<Void> clear() {
+    decoded.clear();
     return simpleStore.clear();
   }
 
   @Override
   public ListenableFuture<Void> deleteAllNow() {
+    decoded.clear();
     return simpleStore.deleteAllNow();
   }
 
   @Override
   public void close() {
+    decoded.clear();
     simpleStore.close();
   }
 
   @Override
   public ListenableFuture<Integer> getInt(String key) {
-    return Futures.transform(
-        get(key),
-        (b) -> {
-          if (b == null || b.length != 4) {
-            return 0;
-          }
-          // decode big endian
-          return b[0] << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF);
-        },
-        directExecutor());
+    return getDecoded(key, INT_DECODER);
   }
 
   @Override
   public ListenableFuture<Integer> put(String key, int value) {
-    byte[] bytes;
-    if (value != 0) {
-      // encode big endian
-      bytes =
-          new byte[] {
-            (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value
-          };
-    } else {
-      bytes = null;
-    }
-    return Futures.transform(put(key, bytes), (v) -> value, directExecutor());
+    return Futures.transform(put(key, encodeInt(value)), (v) -> value, directExecutor());
   }
 
   @Override
   public ListenableFuture<Long> getLong(String key) {
-    return Futures.transform(
-        get(key),
-        (b) -> {
-          if (b == null || b.length != 8) {
-            return 0L;
-          }
-          return (b[0] & 0xFFL) << 56
-              | (b[1] & 0xFFL) << 48
-              | (b[2] & 0xFFL) << 40
-              | (b[3] & 0xFFL) << 32
-              | (b[4] & 0xFFL) << 24
-              | (b[5] & 0xFFL) << 16
-              | (b[6] & 0xFFL) << 8
-              | (b[7] & 0xFFL);
-        },
-        directExecutor());
+    return getDecoded(key, LONG_DECODER);
   }
 
   @Override
   public ListenableFuture<Long> put(String key, long value) {
-    byte[] bytes;
-    if (value != 0) {
-      long v = value;
-      bytes = new byte[8];
-      // encode big endian
-      for (int i = 7; i >= 0; i--) {
-        bytes[i] = (byte) (v & 0xffL);
-        v >>= 8;
-      }
-    } else {
-      bytes = null;
-    }
-    return Futures.transform(put(key, bytes), (v) -> value, directExecutor());
+    return Futures.transform(put(key, encodeLong(value)), (v) -> value, directExecutor());
   }
 
   @Override
-  public ListenableFuture<Boolean> getBoolean(String key) {
+  public ListenableFuture<Long> increment(String key, long delta) {
     return Futures.transform(
-        get(key), (b) -> b != null && b.length > 0 && b[0] > 0, directExecutor());
+        update(key, (b) -> encodeLong(decodeLong(b) + delta)), LONG_DECODER, directExecutor());
+  }
+
+  @Override
+  public ListenableFuture<Boolean> getBoolean(String key) {
+    return getDecoded(key, BOOLEAN_DECODER);
   }
 
   @Override
   public ListenableFuture<Boolean> put(String key, boolean value) {
-    byte[] bytes;
-    if (value) {
-      bytes = new byte[] {1};
-    } else {
-      bytes = new byte[] {0};
-    }
-    return Futures.transform(put(key, bytes), (v) -> value, directExecutor());
+    return Futures.transform(put(key, encodeBoolean(value)), (v) -> value, directExecutor());
   }
 
   @Override
   public ListenableFuture<Double> getDouble(String key) {
-    return Futures.transform(getLong(key), Double::longBitsToDouble, directExecutor());
+    return getDecoded(key, DOUBLE_DECODER);
   }
 
   @Override
   public ListenableFuture<Double> put(String key, double value) {
-    return Futures.transform(
-        put(key, Double.doubleToRawLongBits(value)), (v) -> value, directExecutor());
+    return Futures.transform(put(key, encodeDouble(value)), (v) -> value, directExecutor());
   }
 
   @Override
   public ListenableFuture<Void> remove(String key) {
     return simpleStore.remove(key);
   }
+
+  @Override
+  public ListenableFuture<byte[]> update(String key, Function<byte[], byte[]> function) {
+    return simpleStore.update(key, function);
+  }
+
+  @Override
+  public ListenableFuture<Boolean> compareAndSet(
+      String key, @Nullable byte[] expect, @Nullable byte[] update) {
+    return simpleStore.compareAndSet(key, expect, update);
+  }
+
+  @Override
+  public ListenableFuture<Map<String, byte[]>> getAll(Collection<String> keys) {
+    return simpleStore.getAll(keys);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAll(Map<String, byte[]> values) {
+    return simpleStore.putAll(values);
+  }
+
+  @Override
+  public ListenableFuture<Void> removeAll(Collection<String> keys) {
+    return simpleStore.removeAll(keys);
+  }
+
+  @Override
+  public ListenableFuture<Void> commit(Transaction transaction) {
+    return simpleStore.commit(transaction);
+  }
+
+  @Override
+  public ListenableFuture<List<String>> keys() {
+    return simpleStore.keys();
+  }
+
+  @Override
+  public ListenableFuture<List<String>> keysWithPrefix(String prefix) {
+    return simpleStore.keysWithPrefix(prefix);
+  }
+
+  @Override
+  public ListenableFuture<Void> scan(String prefix, EntryVisitor visitor) {
+    return simpleStore.scan(prefix, visitor);
+  }
+
+  @Override
+  public ListenableFuture<ByteBuffer> getBuffer(String key) {
+    return simpleStore.getBuffer(key);
+  }
+
+  @Override
+  public ListenableFuture<InputStream> openInputStream(String key) {
+    return simpleStore.openInputStream(key);
+  }
+
+  @Override
+  public ListenableFuture<ByteBuffer> putBuffer(String key, @Nullable ByteBuffer value) {
+    return simpleStore.putBuffer(key, value);
+  }
+
+  @Override
+  public ListenableFuture<ValueOutputStream> openOutputStream(String key) {
+    return simpleStore.openOutputStream(key);
+  }
+
+  @Nullable
+  @Override
+  public byte[] getIfCached(String key) {
+    return simpleStore.getIfCached(key);
+  }
+
+  @Override
+  public CacheStats getCacheStats() {
+    return simpleStore.getCacheStats();
+  }
+
+  @Override
+  public ListenableFuture<Map<String, Integer>> getAllInts(Collection<String> keys) {
+    return getAllDecoded(keys, INT_DECODER);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAllInts(Map<String, Integer> values) {
+    return putAllEncoded(values, PrimitiveSimpleStoreImpl::encodeInt);
+  }
+
+  @Override
+  public ListenableFuture<Map<String, Long>> getAllLongs(Collection<String> keys) {
+    return getAllDecoded(keys, LONG_DECODER);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAllLongs(Map<String, Long> values) {
+    return putAllEncoded(values, PrimitiveSimpleStoreImpl::encodeLong);
+  }
+
+  @Override
+  public ListenableFuture<Map<String, Boolean>> getAllBooleans(Collection<String> keys) {
+    return getAllDecoded(keys, BOOLEAN_DECODER);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAllBooleans(Map<String, Boolean> values) {
+    return putAllEncoded(values, PrimitiveSimpleStoreImpl::encodeBoolean);
+  }
+
+  @Override
+  public ListenableFuture<Map<String, Double>> getAllDoubles(Collection<String> keys) {
+    return getAllDecoded(keys, DOUBLE_DECODER);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAllDoubles(Map<String, Double> values) {
+    return putAllEncoded(values, PrimitiveSimpleStoreImpl::encodeDouble);
+  }
+
+  @Override
+  public ListenableFuture<Map<String, String>> getAllStrings(Collection<String> keys) {
+    return getAllDecoded(keys, STRING_DECODER);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAllStrings(Map<String, String> values) {
+    return putAllEncoded(
+        values, (v) -> v == null || v.isEmpty() ? null : stringEncoding.encode(v));
+  }
+
+  private <T> ListenableFuture<T> getDecoded(String key, Function<byte[], T> decoder) {
+    byte[] cached = simpleStore.getIfCached(key);
+    if (cached == null) {
+      decoded.remove(key);
+      return Futures.transform(get(key), decoder, directExecutor());
+    }
+    return getDecoded(key, cached, decoder);
+  }
+
+  /**
+   * Serve the value of bytes taken from the namespace's memory cache, decoding them and allocating
+   * its future only the first time.
+   */
+  private <T> ListenableFuture<T> getDecoded(
+      String key, byte[] cached, Function<byte[], T> decoder) {
+    ListenableFuture<T> future = decoded.get(key, cached, decoder);
+    if (future == null) {
+      future = Futures.immediateFuture(decoder.apply(cached));
+      decoded.put(key, cached, decoder, future);
+    }
+    return future;
+  }
+
+  private <T> ListenableFuture<Map<String, T>> getAllDecoded(
+      Collection<String> keys, Function<byte[], T> decoder) {
+    return Futures.transform(
+        getAll(keys),
+        (values) -> {
+          Map<String, T> decoded = new LinkedHashMap<>();
+          for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            decoded.put(entry.getKey(), decoder.apply(entry.getValue()));
+          }
+          return decoded;
+        },
+        directExecutor());
+  }
+
+  private <T> ListenableFuture<Void> putAllEncoded(
+      Map<String, T> values, Function<T, byte[]> encoder) {
+    Map<String, byte[]> encoded = new LinkedHashMap<>();
+    for (Map.Entry<String, T> entry : values.entrySet()) {
+      encoded.put(entry.getKey(), encoder.apply(entry.getValue()));
+    }
+    return putAll(encoded);
+  }
+
+  private static int decodeInt(@Nullable byte[] b) {
+    if (b == null || b.length != 4) {
+      return 0;
+    }
+    // decode big endian
+    return b[0] << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF);
+  }
+
+  @Nullable
+  private static byte[] encodeInt(int value) {
+    if (value == 0) {
+      return null;
+    }
+    // encode big endian
+    return new byte[] {
+      (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value
+    };
+  }
+
+  private static long decodeLong(@Nullable byte[] b) {
+    if (b == null || b.length != 8) {
+      return 0L;
+    }
+    return (b[0] & 0xFFL) << 56
+        | (b[1] & 0xFFL) << 48
+        | (b[2] & 0xFFL) << 40
+        | (b[3] & 0xFFL) << 32
+        | (b[4] & 0xFFL) << 24
+        | (b[5] & 0xFFL) << 16
+        | (b[6] & 0xFFL) << 8
+        | (b[7] & 0xFFL);
+  }
+
+  @Nullable
+  private static byte[] encodeLong(long value) {
+    if (value == 0) {
+      return null;
+    }
+    long v = value;
+    byte[] bytes = new byte[8];
+    // encode big endian
+    for (int i = 7; i >= 0; i--) {
+      bytes[i] = (byte) (v & 0xffL);
+      v >>= 8;
+    }
+    return bytes;
+  }
+
+  private static boolean decodeBoolean(@Nullable byte[] b) {
+    return b != null && b.length > 0 && b[0] > 0;
+  }
+
+  private static byte[] encodeBoolean(boolean value) {
+    return value ? new byte[] {1} : new byte[] {0};
+  }
+
+  private static double decodeDouble(@Nullable byte[] b) {
+    return Double.longBitsToDouble(decodeLong(b));
+  }
+
+  @Nullable
+  private static byte[] encodeDouble(double value) {
+    return encodeLong(Double.doubleToRawLongBits(value));
+  }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.uber.simplestore.Durability;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class AppendLogStorageTest {
+
+  private static final String TEST_KEY = "test";
+  private static final byte[] VALUE_ONE = new byte[] {0xA, 0xB};
+  private static final byte[] VALUE_TWO = new byte[] {0x1, 0x2, 0x3};
+
+  private final Context context =
+      InstrumentationRegistry.getInstrumentation().getTargetContext().getApplicationContext();
+  private final File directory = new File(context.getFilesDir(), "log");
+  private final Queue<Runnable> background = new ArrayDeque<>();
+  private final AppendLogStorage storage =
+      new AppendLogStorage(directory, MoreExecutors.directExecutor(), background::add, 0);
+
+  @After
+  public void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  public void missingKeyDoesNotCreateLog() throws Exception {
+    assertThat(storage.read(TEST_KEY)).isNull();
+    commitDelete(storage, TEST_KEY);
+    assertThat(logFile().exists()).isFalse();
+  }
+
+  @Test
+  public void readsLatestWrite() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, TEST_KEY, VALUE_TWO);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void replaysAfterReopen() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, "other", VALUE_TWO);
+    commitWrite(storage, TEST_KEY, VALUE_TWO);
+    commitDelete(storage, "other");
+    storage.close();
+
+    AppendLogStorage reopened = new AppendLogStorage(directory, MoreExecutors.directExecutor());
+    assertThat(reopened.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+    assertThat(reopened.read("other")).isNull();
+    reopened.close();
+  }
+
+  @Test
+  public void truncatesTornRecord() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, "torn", VALUE_TWO);
+    storage.close();
+    long length = logFile().length();
+    try (RandomAccessFile file = new RandomAccessFile(logFile(), "rw")) {
+      file.setLength(length - 1);
+    }
+
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(storage.read("torn")).isNull();
+    commitWrite(storage, "after", VALUE_TWO);
+    storage.close();
+    assertThat(storage.read("after")).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void dropsTornGroup() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.write(TEST_KEY, VALUE_TWO, Durability.SYNC);
+    storage.write("torn", VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    storage.close();
+    long length = logFile().length();
+    try (RandomAccessFile file = new RandomAccessFile(logFile(), "rw")) {
+      file.setLength(length - 1);
+    }
+
+    // The intact first record of the group must not be replayed on its own.
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(storage.read("torn")).isNull();
+  }
+
+  @Test
+  public void listsKeys() throws Exception {
+    assertThat(storage.keys()).isEmpty();
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, "other", VALUE_TWO);
+    commitDelete(storage, "other");
+    storage.close();
+    assertThat(storage.keys()).containsExactly(TEST_KEY);
+  }
+
+  @Test
+  public void clearRemovesLog() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.clear();
+    assertThat(logFile().exists()).isFalse();
+    assertThat(storage.read(TEST_KEY)).isNull();
+  }
+
+  @Test
+  public void compactsDeadRecords() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, "other", VALUE_ONE);
+    commitWrite(storage, "other", VALUE_TWO);
+    commitWrite(storage, "other", VALUE_ONE);
+    long deadBytes = storage.deadBytes();
+    assertThat(deadBytes).isGreaterThan(0L);
+    runBackground();
+
+    // Compaction started on the third write, so only what the last write made dead is left.
+    assertThat(storage.deadBytes()).isLessThan(deadBytes);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(storage.read("other")).isEqualTo(VALUE_ONE);
+    assertThat(new File(directory, AppendLogStorage.COMPACTION_FILE_NAME).exists()).isFalse();
+  }
+
+  @Test
+  public void compactionKeepsWritesMadeDuringCopy() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, TEST_KEY, VALUE_TWO);
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    // Compaction is now pending, keep writing before it runs.
+    commitWrite(storage, "during", VALUE_ONE);
+    commitDelete(storage, TEST_KEY);
+    runBackground();
+
+    assertThat(storage.read(TEST_KEY)).isNull();
+    assertThat(storage.read("during")).isEqualTo(VALUE_ONE);
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isNull();
+    assertThat(storage.read("during")).isEqualTo(VALUE_ONE);
+  }
+
+  @Test
+  public void compactionDiscardedAfterClear() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, TEST_KEY, VALUE_TWO);
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.clear();
+    runBackground();
+
+    assertThat(storage.read(TEST_KEY)).isNull();
+    assertThat(logFile().exists()).isFalse();
+  }
+
+  @Test
+  public void batchSharesOneAppend() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.delete(TEST_KEY, Durability.SYNC);
+    assertThat(logFile().length()).isEqualTo(8L);
+    storage.sync();
+
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isNull();
+    assertThat(storage.read("other")).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void unsyncedWritesAreFlushed() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.ATOMIC);
+    storage.delete(TEST_KEY, Durability.BEST_EFFORT);
+    storage.write("other", VALUE_TWO, Durability.BEST_EFFORT);
+    storage.sync();
+
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isNull();
+    assertThat(storage.read("other")).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void closeDiscardsStagedWrites() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.write(TEST_KEY, VALUE_TWO, Durability.SYNC);
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+  }
+
+  private static void commitWrite(AppendLogStorage storage, String key, byte[] value)
+      throws Exception {
+    storage.write(key, value, Durability.SYNC);
+    storage.sync();
+  }
+
+  private static void commitDelete(AppendLogStorage storage, String key) throws Exception {
+    storage.delete(key, Durability.SYNC);
+    storage.sync();
+  }
+
+  private void runBackground() {
+    Runnable task;
+    while ((task = background.poll()) != null) {
+      task.run();
+    }
+  }
+
+  private File logFile() {
+    return new File(directory, AppendLogStorage.LOG_FILE_NAME);
+  }
+}
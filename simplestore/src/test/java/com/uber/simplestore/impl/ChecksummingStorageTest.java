@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.common.io.ByteStreams;
+import com.uber.simplestore.CorruptValueException;
+import com.uber.simplestore.Durability;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Objects;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class ChecksummingStorageTest {
+
+  private static final String TEST_KEY = "test";
+  private static final byte[] VALUE_ONE = new byte[] {0xA, 0xB};
+  private static final byte[] VALUE_TWO = new byte[] {0x1, 0x2, 0x3};
+  private static final byte[] LOOKALIKE = new byte[] {(byte) 0xF5, (byte) 0xC1, 0x43, 0x1};
+
+  private final Context context =
+      InstrumentationRegistry.getInstrumentation().getTargetContext().getApplicationContext();
+  private final File directory = new File(context.getFilesDir(), "keys");
+  private final FilePerKeyStorage files = new FilePerKeyStorage(directory);
+  private final ChecksummingStorage storage =
+      new ChecksummingStorage(files, directory, true, false);
+
+  @After
+  public void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  public void valuesAreFramed() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    assertThat(files.read(TEST_KEY)).hasLength(ChecksummingStorage.HEADER_BYTES + 2);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(storage.read("missing")).isNull();
+  }
+
+  @Test
+  public void unframedValuesAreRead() throws Exception {
+    files.write(TEST_KEY, VALUE_TWO, Durability.SYNC);
+    files.sync();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void tornValueFails() throws Exception {
+    storage.write(TEST_KEY, VALUE_TWO, Durability.BEST_EFFORT);
+    storage.sync();
+    try (RandomAccessFile file = new RandomAccessFile(new File(directory, TEST_KEY), "rw")) {
+      file.setLength(file.length() - 1);
+    }
+    try {
+      storage.read(TEST_KEY);
+      fail();
+    } catch (CorruptValueException e) {
+      // Expected.
+    }
+    // Torn within the magic number.
+    try (RandomAccessFile file = new RandomAccessFile(new File(directory, TEST_KEY), "rw")) {
+      file.setLength(1);
+    }
+    try {
+      Objects.requireNonNull(storage.concurrentReader(TEST_KEY)).call();
+      fail();
+    } catch (CorruptValueException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void corruptValueIsMiss() throws Exception {
+    ChecksummingStorage cache = new ChecksummingStorage(files, directory, true, true);
+    cache.write(TEST_KEY, VALUE_TWO, Durability.BEST_EFFORT);
+    cache.sync();
+    try (RandomAccessFile file = new RandomAccessFile(new File(directory, TEST_KEY), "rw")) {
+      file.seek(file.length() - 1);
+      file.write(0x7);
+    }
+    assertThat(cache.read(TEST_KEY)).isNull();
+    assertThat(cache.openStream(TEST_KEY)).isNull();
+  }
+
+  @Test
+  public void lookalikeIsFramedWhenUnchecksummed() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    byte[] lookalike = Arrays.copyOf(Objects.requireNonNull(files.read(TEST_KEY)), 3);
+    ChecksummingStorage unchecksummed = new ChecksummingStorage(files, directory, false, false);
+    unchecksummed.write("plain", VALUE_ONE, Durability.SYNC);
+    unchecksummed.write("lookalike", lookalike, Durability.SYNC);
+    unchecksummed.sync();
+    assertThat(files.read("plain")).isEqualTo(VALUE_ONE);
+    assertThat(unchecksummed.read("lookalike")).isEqualTo(lookalike);
+  }
+
+  @Test
+  public void legacyLookalikesAreFramedBeforeUse() throws Exception {
+    files.write(TEST_KEY, LOOKALIKE, Durability.SYNC);
+    files.write("short", new byte[] {(byte) 0xF5}, Durability.SYNC);
+    files.write("plain", VALUE_ONE, Durability.SYNC);
+    files.sync();
+    assertThat(ChecksummingStorage.isMarked(directory)).isFalse();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(LOOKALIKE);
+    assertThat(storage.read("short")).isEqualTo(new byte[] {(byte) 0xF5});
+    assertThat(files.read(TEST_KEY)).hasLength(ChecksummingStorage.HEADER_BYTES + 4);
+    assertThat(files.read("plain")).isEqualTo(VALUE_ONE);
+    assertThat(ChecksummingStorage.isMarked(directory)).isTrue();
+    assertThat(storage.keys()).containsExactly(TEST_KEY, "short", "plain");
+  }
+
+  @Test
+  public void streamedLookalikeIsFramed() throws Exception {
+    File streamed = new File(context.getFilesDir(), "streamed");
+    try (FileOutputStream out = new FileOutputStream(streamed)) {
+      out.write(LOOKALIKE);
+    }
+    storage.commitFile(TEST_KEY, streamed, Durability.SYNC);
+    assertThat(streamed.exists()).isFalse();
+    try (FileOutputStream out = new FileOutputStream(streamed)) {
+      out.write(VALUE_TWO);
+    }
+    storage.commitFile("plain", streamed, Durability.SYNC);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(LOOKALIKE);
+    try (InputStream in = Objects.requireNonNull(storage.openStream(TEST_KEY))) {
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(LOOKALIKE);
+    }
+    // Streamed values are not held in memory to be checksummed.
+    assertThat(files.read("plain")).isEqualTo(VALUE_TWO);
+    assertThat(storage.read("plain")).isEqualTo(VALUE_TWO);
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.common.io.ByteStreams;
+import com.uber.simplestore.CorruptValueException;
+import com.uber.simplestore.DeflateCodec;
+import com.uber.simplestore.Durability;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class CompressingStorageTest {
+
+  private static final String TEST_KEY = "test";
+  private static final byte[] SMALL = new byte[] {0xA, 0xB};
+  private static final byte[] LARGE =
+      repeat("{\"name\":\"value\",\"count\":1}", 40).getBytes(StandardCharsets.UTF_8);
+
+  private final Context context =
+      InstrumentationRegistry.getInstrumentation().getTargetContext().getApplicationContext();
+  private final File directory = new File(context.getFilesDir(), "keys");
+  private final FilePerKeyStorage files = new FilePerKeyStorage(directory);
+  private final CompressingStorage storage =
+      new CompressingStorage(files, directory, new DeflateCodec(), 64, false);
+
+  @After
+  public void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  public void largeValuesAreCompressed() throws Exception {
+    storage.write(TEST_KEY, LARGE, Durability.SYNC);
+    storage.write("small", SMALL, Durability.SYNC);
+    storage.sync();
+    assertThat(new File(directory, TEST_KEY).length()).isLessThan(LARGE.length / 4L);
+    assertThat(files.read("small")).isEqualTo(SMALL);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(LARGE);
+    assertThat(storage.read("small")).isEqualTo(SMALL);
+    try (InputStream in = Objects.requireNonNull(storage.openStream(TEST_KEY))) {
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(LARGE);
+    }
+    try (InputStream in = Objects.requireNonNull(storage.openStream("small"))) {
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(SMALL);
+    }
+  }
+
+  @Test
+  public void readableWithoutCodec() throws Exception {
+    storage.write(TEST_KEY, LARGE, Durability.SYNC);
+    storage.sync();
+    CompressingStorage uncompressed = new CompressingStorage(files, directory, null, 0, false);
+    assertThat(uncompressed.read(TEST_KEY)).isEqualTo(LARGE);
+    // Written before compression was turned on.
+    uncompressed.write("raw", LARGE, Durability.SYNC);
+    uncompressed.sync();
+    assertThat(files.read("raw")).isEqualTo(LARGE);
+    assertThat(storage.read("raw")).isEqualTo(LARGE);
+  }
+
+  @Test
+  public void valueStartingWithHeaderIsStored() throws Exception {
+    storage.write(TEST_KEY, LARGE, Durability.SYNC);
+    storage.sync();
+    byte[] header = Arrays.copyOf(Objects.requireNonNull(files.read(TEST_KEY)), 3);
+    storage.write("lookalike", header, Durability.SYNC);
+    storage.sync();
+    assertThat(files.read("lookalike")).hasLength(CompressingStorage.HEADER_BYTES + 3);
+    assertThat(storage.read("lookalike")).isEqualTo(header);
+  }
+
+  @Test
+  public void legacyAndStreamedLookalikesAreStored() throws Exception {
+    byte[] lookalike = new byte[] {(byte) 0xF5, (byte) 0xC0, 0x53, 0x1};
+    files.write(TEST_KEY, lookalike, Durability.SYNC);
+    files.write("small", SMALL, Durability.SYNC);
+    files.sync();
+    assertThat(CompressingStorage.isMarked(directory)).isFalse();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(lookalike);
+    assertThat(files.read(TEST_KEY)).hasLength(CompressingStorage.HEADER_BYTES + 4);
+    assertThat(files.read("small")).isEqualTo(SMALL);
+    assertThat(CompressingStorage.isMarked(directory)).isTrue();
+
+    File streamed = new File(context.getFilesDir(), "streamed");
+    try (FileOutputStream out = new FileOutputStream(streamed)) {
+      out.write(lookalike);
+    }
+    storage.commitFile("streamed", streamed, Durability.SYNC);
+    assertThat(streamed.exists()).isFalse();
+    assertThat(storage.read("streamed")).isEqualTo(lookalike);
+    try (InputStream in = Objects.requireNonNull(storage.openStream("streamed"))) {
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(lookalike);
+    }
+  }
+
+  @Test
+  public void truncatedValueIsMissForCache() throws Exception {
+    storage.write(TEST_KEY, LARGE, Durability.SYNC);
+    storage.sync();
+    byte[] compressed = Objects.requireNonNull(files.read(TEST_KEY));
+    files.write(TEST_KEY, Arrays.copyOf(compressed, compressed.length / 2), Durability.SYNC);
+    files.sync();
+    try {
+      storage.read(TEST_KEY);
+      fail();
+    } catch (CorruptValueException e) {
+      // Not a cache.
+    }
+
+    CompressingStorage cache =
+        new CompressingStorage(files, directory, new DeflateCodec(), 64, true);
+    assertThat(cache.read(TEST_KEY)).isNull();
+    assertThat(cache.openStream(TEST_KEY)).isNull();
+    assertThat(Objects.requireNonNull(cache.concurrentReader(TEST_KEY)).call()).isNull();
+  }
+
+  @Test
+  public void dictionary() throws Exception {
+    byte[] value = "{\"name\":\"other\",\"count\":2}".getBytes(StandardCharsets.UTF_8);
+    byte[] dictionary = DeflateCodec.trainDictionary(Arrays.asList(LARGE, value), 1024);
+    assertThat(dictionary.length).isAtMost(1024);
+    CompressingStorage primed =
+        new CompressingStorage(
+            files,
+            directory,
+            new DeflateCodec(Deflater.BEST_COMPRESSION, dictionary),
+            value.length,
+            false);
+    primed.write(TEST_KEY, value, Durability.SYNC);
+    primed.sync();
+    assertThat(new File(directory, TEST_KEY).length()).isLessThan((long) value.length);
+    assertThat(primed.read(TEST_KEY)).isEqualTo(value);
+    try {
+      storage.read(TEST_KEY);
+      fail();
+    } catch (IOException e) {
+      // Needs the dictionary.
+    }
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(s);
+    }
+    return builder.toString();
+  }
+}
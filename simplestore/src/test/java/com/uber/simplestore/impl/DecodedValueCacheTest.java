@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class DecodedValueCacheTest {
+
+  private static final byte[] VALUE = new byte[20];
+  // Weight of a one character key holding VALUE decoded once.
+  private static final long ENTRY_BYTES =
+      DecodedValueCache.ENTRY_OVERHEAD_BYTES
+          + 2
+          + VALUE.length
+          + DecodedValueCache.VALUE_OVERHEAD_BYTES;
+  private static final Object DECODER = new Object();
+  private static final Object OTHER_DECODER = new Object();
+  private static final ListenableFuture<String> DECODED = Futures.immediateFuture("a");
+  private static final ListenableFuture<String> OTHER_DECODED = Futures.immediateFuture("b");
+
+  private final DecodedValueCache cache = new DecodedValueCache(2 * ENTRY_BYTES);
+
+  @Test
+  public void onlyServesSameBytesAndDecoder() {
+    cache.put("a", VALUE, DECODER, DECODED);
+    assertThat(cache.<String>get("a", VALUE, DECODER)).isSameInstanceAs(DECODED);
+    assertThat(cache.<String>get("a", VALUE.clone(), DECODER)).isNull();
+    assertThat(cache.<String>get("a", VALUE, OTHER_DECODER)).isNull();
+    assertThat(cache.<String>get("b", VALUE, DECODER)).isNull();
+  }
+
+  @Test
+  public void decodersOfAKeyKeepTheirValues() {
+    cache.put("a", VALUE, DECODER, DECODED);
+    cache.put("a", VALUE, OTHER_DECODER, OTHER_DECODED);
+    assertThat(cache.<String>get("a", VALUE, DECODER)).isSameInstanceAs(DECODED);
+    assertThat(cache.<String>get("a", VALUE, OTHER_DECODER)).isSameInstanceAs(OTHER_DECODED);
+
+    // New bytes of the key drop every value decoded from the old ones.
+    byte[] changed = VALUE.clone();
+    cache.put("a", changed, DECODER, DECODED);
+    assertThat(cache.<String>get("a", changed, OTHER_DECODER)).isNull();
+    assertThat(cache.sizeBytes()).isEqualTo(ENTRY_BYTES);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    cache.put("a", VALUE, DECODER, DECODED);
+    cache.put("b", VALUE, DECODER, DECODED);
+    assertThat(cache.<String>get("a", VALUE, DECODER)).isNotNull();
+    cache.put("c", VALUE, DECODER, DECODED);
+
+    assertThat(cache.<String>get("b", VALUE, DECODER)).isNull();
+    assertThat(cache.<String>get("a", VALUE, DECODER)).isNotNull();
+    assertThat(cache.<String>get("c", VALUE, DECODER)).isNotNull();
+    assertThat(cache.sizeBytes()).isEqualTo(2 * ENTRY_BYTES);
+  }
+
+  @Test
+  public void trimAllEvictsLeastRecentlyUsed() {
+    cache.put("a", VALUE, DECODER, DECODED);
+    cache.put("b", VALUE, DECODER, DECODED);
+    assertThat(cache.<String>get("a", VALUE, DECODER)).isNotNull();
+
+    DecodedValueCache.trimAll(0.5f);
+    assertThat(cache.<String>get("b", VALUE, DECODER)).isNull();
+    assertThat(cache.<String>get("a", VALUE, DECODER)).isNotNull();
+    DecodedValueCache.trimAll(0);
+    assertThat(cache.sizeBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void skipsValuesOverBudget() {
+    cache.put("a", new byte[(int) (2 * ENTRY_BYTES)], DECODER, DECODED);
+    assertThat(cache.sizeBytes()).isEqualTo(0);
+    cache.put("a", VALUE, DECODER, DECODED);
+    cache.remove("a");
+    assertThat(cache.sizeBytes()).isEqualTo(0);
+  }
+}
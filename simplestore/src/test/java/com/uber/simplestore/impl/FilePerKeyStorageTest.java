@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.common.io.ByteStreams;
+import com.uber.simplestore.Durability;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Objects;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class FilePerKeyStorageTest {
+
+  private static final String TEST_KEY = "test";
+  private static final byte[] VALUE_ONE = new byte[] {0xA, 0xB};
+  private static final byte[] VALUE_TWO = new byte[] {0x1, 0x2, 0x3};
+
+  private final Context context =
+      InstrumentationRegistry.getInstrumentation().getTargetContext().getApplicationContext();
+  private final File directory = new File(context.getFilesDir(), "keys");
+  private final FilePerKeyStorage storage = new FilePerKeyStorage(directory);
+
+  @After
+  public void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  public void singleWriteSkipsJournal() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(journalFile().exists()).isFalse();
+  }
+
+  @Test
+  public void batchIsJournaled() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    assertThat(journalFile().length()).isGreaterThan(8L);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(storage.read("other")).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void committedFileReplacesJournaledKey() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    File file = new File(context.getFilesDir(), "streamed");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(VALUE_TWO);
+    }
+    storage.commitFile(TEST_KEY, file, Durability.SYNC);
+    assertThat(file.exists()).isFalse();
+    // As after a crash, the journal must not be replayed over the committed file.
+    FilePerKeyStorage reopened = new FilePerKeyStorage(directory);
+    try (InputStream in = Objects.requireNonNull(reopened.openStream(TEST_KEY))) {
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(VALUE_TWO);
+    }
+    assertThat(reopened.openStream("missing")).isNull();
+    reopened.close();
+  }
+
+  @Test
+  public void unsyncedWritesSkipJournal() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.ATOMIC);
+    storage.write("other", VALUE_TWO, Durability.BEST_EFFORT);
+    storage.sync();
+    assertThat(journalFile().exists()).isFalse();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(storage.read("other")).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void unsyncedWriteAfterSyncedOneIsJournaled() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.BEST_EFFORT);
+    storage.sync();
+    assertThat(storage.read("other")).isEqualTo(VALUE_TWO);
+
+    // Replaying the journal must not undo the later write.
+    assertThat(new File(directory, "other").delete()).isTrue();
+    FilePerKeyStorage reopened = new FilePerKeyStorage(directory);
+    try {
+      assertThat(reopened.read("other")).isEqualTo(VALUE_TWO);
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  public void unsyncedWritesCheckpointJournaledKeys() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    storage.write(TEST_KEY, VALUE_TWO, Durability.ATOMIC);
+    storage.delete("other", Durability.ATOMIC);
+    storage.sync();
+
+    // Killed without closing, so the key files survive and the journal must not undo them.
+    FilePerKeyStorage reopened = new FilePerKeyStorage(directory);
+    try {
+      assertThat(reopened.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+      assertThat(reopened.read("other")).isNull();
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  public void closeCheckpointsJournal() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.delete(TEST_KEY, Durability.SYNC);
+    storage.sync();
+    storage.close();
+    assertThat(journalFile().length()).isEqualTo(8L);
+    assertThat(storage.read(TEST_KEY)).isNull();
+  }
+
+  @Test
+  public void replaysJournalOverLostFiles() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    // Simulate a crash losing the unsynced key files before a checkpoint.
+    assertThat(new File(directory, TEST_KEY).delete()).isTrue();
+    assertThat(new File(directory, "other").delete()).isTrue();
+
+    FilePerKeyStorage reopened = new FilePerKeyStorage(directory);
+    try {
+      assertThat(reopened.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+      assertThat(reopened.read("other")).isEqualTo(VALUE_TWO);
+      assertThat(journalFile().length()).isEqualTo(8L);
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  public void tornJournalGroupIsDropped() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    // Simulate a crash while the journal was being written, before any key file was replaced.
+    assertThat(new File(directory, TEST_KEY).delete()).isTrue();
+    assertThat(new File(directory, "other").delete()).isTrue();
+    try (RandomAccessFile file = new RandomAccessFile(journalFile(), "rw")) {
+      file.setLength(file.length() - 1);
+    }
+
+    FilePerKeyStorage reopened = new FilePerKeyStorage(directory);
+    try {
+      assertThat(reopened.read(TEST_KEY)).isNull();
+      assertThat(reopened.read("other")).isNull();
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  public void journaledKeyStaysJournaled() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    long journaled = journalFile().length();
+    storage.write(TEST_KEY, VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    assertThat(journalFile().length()).isGreaterThan(journaled);
+
+    assertThat(new File(directory, TEST_KEY).delete()).isTrue();
+    FilePerKeyStorage reopened = new FilePerKeyStorage(directory);
+    try {
+      assertThat(reopened.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  public void listsKeys() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.write("removed", VALUE_TWO, Durability.SYNC);
+    storage.delete("removed", Durability.SYNC);
+    storage.sync();
+    assertThat(new File(directory, "child").mkdirs()).isTrue();
+    assertThat(new File(directory, "unfinished.new").createNewFile()).isTrue();
+    assertThat(new File(directory, TEST_KEY).renameTo(new File(directory, TEST_KEY + ".bak")))
+        .isTrue();
+
+    assertThat(storage.keys()).containsExactly(TEST_KEY, "other");
+    // Listed keys are readable, including one left as a backup.
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(storage.read("child")).isNull();
+    assertThat(storage.isListable(TEST_KEY)).isTrue();
+    assertThat(storage.isListable("child/key")).isFalse();
+  }
+
+  @Test
+  public void startupReadsComeFromSnapshot() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    // Files changed just before the snapshot is written are left out.
+    long modified = ageKeyFile(TEST_KEY);
+    ageKeyFile("other");
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    storage.close();
+    assertThat(new File(directory, StartupSnapshot.FILE_NAME).exists()).isTrue();
+    assertThat(storage.keys()).containsExactly(TEST_KEY, "other");
+
+    // Replace the contents but keep the stamp, so only a read of the snapshot sees VALUE_ONE.
+    File keyFile = new File(directory, TEST_KEY);
+    try (RandomAccessFile file = new RandomAccessFile(keyFile, "rw")) {
+      file.write(new byte[] {0x5, 0x6});
+    }
+    assertThat(keyFile.setLastModified(modified)).isTrue();
+    FilePerKeyStorage restarted = new FilePerKeyStorage(directory);
+    assertThat(restarted.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(restarted.read("other")).isEqualTo(VALUE_TWO);
+    restarted.close();
+
+    // A changed stamp invalidates the snapshot value.
+    assertThat(keyFile.setLastModified(modified - 1000)).isTrue();
+    restarted = new FilePerKeyStorage(directory);
+    assertThat(restarted.read(TEST_KEY)).isEqualTo(new byte[] {0x5, 0x6});
+    restarted.close();
+  }
+
+  @Test
+  public void snapshotDropsKeysUnreadForSeveralLaunches() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    ageKeyFile(TEST_KEY);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    storage.close();
+
+    File snapshotFile = new File(directory, StartupSnapshot.FILE_NAME);
+    for (int i = 1; i <= StartupSnapshot.LAUNCHES; i++) {
+      assertThat(snapshotFile.exists()).isTrue();
+      FilePerKeyStorage restarted = new FilePerKeyStorage(directory);
+      assertThat(restarted.read("other")).isNull();
+      restarted.close();
+    }
+    assertThat(snapshotFile.exists()).isFalse();
+  }
+
+  @Test
+  public void snapshotDoesNotRecreateMovedDirectory() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.sync();
+    ageKeyFile(TEST_KEY);
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    // As when the namespace is deleted while open.
+    File moved = new File(context.getFilesDir(), "moved");
+    assertThat(directory.renameTo(moved)).isTrue();
+    storage.close();
+    assertThat(directory.exists()).isFalse();
+    assertThat(new File(moved, StartupSnapshot.FILE_NAME).exists()).isFalse();
+  }
+
+  @Test
+  public void writesAfterStartupWindowAreNotRecorded() throws Exception {
+    FilePerKeyStorage late = new FilePerKeyStorage(directory, 0);
+    late.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    late.sync();
+    ageKeyFile(TEST_KEY);
+    assertThat(late.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    late.close();
+    assertThat(new File(directory, StartupSnapshot.FILE_NAME).exists()).isFalse();
+  }
+
+  @Test
+  public void concurrentWriterCheckpointsJournaledKey() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    assertThat(journalFile().length()).isGreaterThan(8L);
+
+    storage.concurrentWriter(TEST_KEY, VALUE_TWO, Durability.SYNC).call();
+    assertThat(journalFile().length()).isAtMost(8L);
+    storage.concurrentWriter("other", null, Durability.SYNC).call();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+    assertThat(storage.read("other")).isNull();
+  }
+
+  @Test
+  public void clearDeletesJournal() throws Exception {
+    storage.write(TEST_KEY, VALUE_ONE, Durability.SYNC);
+    storage.write("other", VALUE_TWO, Durability.SYNC);
+    storage.sync();
+    storage.clear();
+    assertThat(directory.exists()).isFalse();
+    assertThat(storage.read(TEST_KEY)).isNull();
+  }
+
+  private File journalFile() {
+    return new File(directory, FilePerKeyStorage.JOURNAL_FILE_NAME);
+  }
+
+  /** Move the modification time of a key file into the past, returning it. */
+  private long ageKeyFile(String key) {
+    File file = new File(directory, key);
+    long modified = (System.currentTimeMillis() - 60_000) / 1000 * 1000;
+    assertThat(file.setLastModified(modified)).isTrue();
+    return modified;
+  }
+}
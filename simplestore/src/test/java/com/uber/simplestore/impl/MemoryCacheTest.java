@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.uber.simplestore.CacheStats;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class MemoryCacheTest {
+
+  private static final byte[] VALUE = new byte[20];
+  // Weight of a one character key holding VALUE.
+  private static final long ENTRY_BYTES = MemoryCache.ENTRY_OVERHEAD_BYTES + 2 + VALUE.length;
+
+  private final MemoryCache cache = new MemoryCache(3 * ENTRY_BYTES);
+
+  @Test
+  public void countsHitsAndMisses() {
+    assertThat(cache.get("a")).isNull();
+    cache.put("a", VALUE);
+    assertThat(cache.get("a")).isEqualTo(VALUE);
+
+    CacheStats stats = cache.stats();
+    assertThat(stats.getHitCount()).isEqualTo(1);
+    assertThat(stats.getMissCount()).isEqualTo(1);
+    assertThat(stats.getSizeBytes()).isEqualTo(ENTRY_BYTES);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    cache.put("a", VALUE);
+    cache.put("b", VALUE);
+    cache.put("c", VALUE);
+    assertThat(cache.get("a")).isNotNull();
+    cache.put("d", VALUE);
+
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("c")).isNotNull();
+    assertThat(cache.get("d")).isNotNull();
+    assertThat(cache.stats().getEvictionCount()).isEqualTo(1);
+    assertThat(cache.stats().getSizeBytes()).isEqualTo(3 * ENTRY_BYTES);
+  }
+
+  @Test
+  public void replacingKeepsSizeExact() {
+    cache.put("a", VALUE);
+    cache.put("a", new byte[0]);
+    assertThat(cache.stats().getSizeBytes()).isEqualTo(ENTRY_BYTES - VALUE.length);
+    cache.remove("a");
+    assertThat(cache.stats().getSizeBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void skipsValuesOverBudget() {
+    cache.put("a", VALUE);
+    cache.put("b", new byte[(int) (3 * ENTRY_BYTES)]);
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("a")).isEqualTo(VALUE);
+    assertThat(cache.stats().getEvictionCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void trimsToSize() {
+    cache.put("a", VALUE);
+    cache.put("b", VALUE);
+    cache.trimToSize(ENTRY_BYTES);
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.get("b")).isEqualTo(VALUE);
+    cache.clear();
+    assertThat(cache.stats().getSizeBytes()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2026. Uber Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.simplestore.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.uber.simplestore.Durability;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class PackedTableStorageTest {
+
+  private static final String TEST_KEY = "test";
+  private static final byte[] VALUE_ONE = new byte[] {0xA, 0xB, 0xC, 0xD};
+  private static final byte[] VALUE_TWO = new byte[] {0x1, 0x2, 0x3, 0x4};
+
+  private final Context context =
+      InstrumentationRegistry.getInstrumentation().getTargetContext().getApplicationContext();
+  private final File directory = new File(context.getFilesDir(), "table");
+  private final PackedTableStorage storage = new PackedTableStorage(directory);
+
+  @After
+  public void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  public void missingKeyDoesNotCreateTable() throws Exception {
+    assertThat(storage.read(TEST_KEY)).isNull();
+    commitDelete(storage, TEST_KEY);
+    assertThat(tableFile().exists()).isFalse();
+  }
+
+  @Test
+  public void reloadsAfterReopen() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, "other", VALUE_TWO);
+    commitWrite(storage, "long", new byte[300]);
+    commitDelete(storage, "other");
+    storage.close();
+
+    PackedTableStorage reopened = new PackedTableStorage(directory);
+    assertThat(reopened.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+    assertThat(reopened.read("other")).isNull();
+    assertThat(reopened.read("long")).hasLength(300);
+    assertThat(reopened.keys()).containsExactly(TEST_KEY, "long");
+    reopened.close();
+  }
+
+  @Test
+  public void sameLengthWritesPatchInPlace() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, "other", VALUE_ONE);
+    long offset = slotOffset(TEST_KEY);
+
+    // A descriptor opened beforehand only sees the writes if the file was not replaced.
+    try (RandomAccessFile before = new RandomAccessFile(tableFile(), "r")) {
+      storage.write(TEST_KEY, VALUE_TWO, Durability.SYNC);
+      storage.write("other", VALUE_TWO, Durability.SYNC);
+      storage.sync();
+      byte[] patched = new byte[VALUE_TWO.length];
+      before.seek(offset);
+      before.readFully(patched);
+      assertThat(patched).isEqualTo(VALUE_TWO);
+    }
+    assertThat(journalFile().exists()).isTrue();
+
+    storage.close();
+    assertThat(journalFile().exists()).isFalse();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+    assertThat(storage.read("other")).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void bestEffortPatchSkipsJournal() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.write(TEST_KEY, VALUE_TWO, Durability.BEST_EFFORT);
+    storage.sync();
+    assertThat(journalFile().exists()).isFalse();
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void unjournaledPatchCheckpointsJournal() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, TEST_KEY, VALUE_TWO);
+    assertThat(journalFile().exists()).isTrue();
+    byte[] latest = new byte[] {0x5, 0x6, 0x7, 0x8};
+    storage.write(TEST_KEY, latest, Durability.BEST_EFFORT);
+    storage.sync();
+    assertThat(journalFile().exists()).isFalse();
+
+    // Reopen without closing, as after a crash.
+    PackedTableStorage reopened = new PackedTableStorage(directory);
+    assertThat(reopened.read(TEST_KEY)).isEqualTo(latest);
+    reopened.close();
+  }
+
+  @Test
+  public void atomicBatchRewritesTable() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, "other", VALUE_ONE);
+    long offset = slotOffset(TEST_KEY);
+
+    // Patching would leave the batch torn by a crash, as nothing is synced.
+    try (RandomAccessFile before = new RandomAccessFile(tableFile(), "r")) {
+      storage.write(TEST_KEY, VALUE_TWO, Durability.ATOMIC);
+      storage.write("other", VALUE_TWO, Durability.ATOMIC);
+      storage.sync();
+      byte[] unchanged = new byte[VALUE_ONE.length];
+      before.seek(offset);
+      before.readFully(unchanged);
+      assertThat(unchanged).isEqualTo(VALUE_ONE);
+    }
+    assertThat(journalFile().exists()).isFalse();
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+    assertThat(storage.read("other")).isEqualTo(VALUE_TWO);
+  }
+
+  @Test
+  public void replaysJournalOverTornPatch() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, TEST_KEY, VALUE_TWO);
+    // Crash part way through the patch: the journal is synced but the table is torn.
+    long offset = slotOffset(TEST_KEY);
+    try (RandomAccessFile file = new RandomAccessFile(tableFile(), "rw")) {
+      file.seek(offset);
+      file.write(VALUE_ONE, 0, 2);
+    }
+
+    PackedTableStorage recovered = new PackedTableStorage(directory);
+    assertThat(recovered.read(TEST_KEY)).isEqualTo(VALUE_TWO);
+    assertThat(journalFile().exists()).isFalse();
+    recovered.close();
+  }
+
+  @Test
+  public void lengthChangeRewritesTable() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, TEST_KEY, new byte[] {0x5});
+    commitWrite(storage, TEST_KEY, new byte[] {0x6});
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(new byte[] {0x6});
+  }
+
+  @Test
+  public void closeDiscardsStagedWrites() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.write(TEST_KEY, VALUE_TWO, Durability.SYNC);
+    storage.close();
+    assertThat(storage.read(TEST_KEY)).isEqualTo(VALUE_ONE);
+  }
+
+  @Test
+  public void clearRemovesTable() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    commitWrite(storage, TEST_KEY, VALUE_TWO);
+    storage.clear();
+    assertThat(tableFile().exists()).isFalse();
+    assertThat(journalFile().exists()).isFalse();
+    assertThat(storage.read(TEST_KEY)).isNull();
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedTableFailsToLoad() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.close();
+    try (RandomAccessFile file = new RandomAccessFile(tableFile(), "rw")) {
+      file.setLength(file.length() - 1);
+    }
+    storage.read(TEST_KEY);
+  }
+
+  @Test
+  public void corruptTableIsMissForCache() throws Exception {
+    commitWrite(storage, TEST_KEY, VALUE_ONE);
+    storage.close();
+    try (RandomAccessFile file = new RandomAccessFile(tableFile(), "rw")) {
+      file.setLength(file.length() - 1);
+    }
+    PackedTableStorage cache = new PackedTableStorage(directory, true);
+    assertThat(cache.read(TEST_KEY)).isNull();
+    assertThat(cache.keys()).isEmpty();
+    assertThat(tableFile().exists()).isFalse();
+    commitWrite(cache, "other", VALUE_TWO);
+    cache.close();
+    assertThat(cache.read("other")).isEqualTo(VALUE_TWO);
+  }
+
+  private static void commitWrite(PackedTableStorage storage, String key, byte[] value)
+      throws Exception {
+    storage.write(key, value, Durability.SYNC);
+    storage.sync();
+  }
+
+  private static void commitDelete(PackedTableStorage storage, String key) throws Exception {
+    storage.delete(key, Durability.SYNC);
+    storage.sync();
+  }
+
+  private long slotOffset(String key) throws Exception {
+    PackedTableStorage.Slot slot =
+        PackedTableStorage.parse(new AtomicFile(tableFile()).readFully()).get(key);
+    assertThat(slot).isNotNull();
+    return slot.offset;
+  }
+
+  private File tableFile() {
+    return new File(directory, PackedTableStorage.TABLE_FILE_NAME);
+  }
+
+  private File journalFile() {
+    return new File(directory, PackedTableStorage.JOURNAL_FILE_NAME);
+  }
+}
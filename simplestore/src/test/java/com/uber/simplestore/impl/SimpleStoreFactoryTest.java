@@ -17,8 +17,10 @@ package com.uber.simplestore.impl;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import com.uber.simplestore.DirectoryProvider;
+import com.uber.simplestore.NamespaceConfig;
 import com.uber.simplestore.SimpleStore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -48,4 +50,45 @@ public final class SimpleStoreFactoryTest {
     child.close();
     leaf.close();
   }
+
+  @Test
+  public void trimMemory() throws Exception {
+    SimpleStore store = SimpleStoreFactory.create(directoryProvider, "trim");
+    SimpleStore critical =
+        SimpleStoreFactory.create(directoryProvider, "trimCritical", NamespaceConfig.CRITICAL);
+    for (SimpleStore s : new SimpleStore[] {store, critical}) {
+      for (int i = 0; i < 4; i++) {
+        s.put("key" + i, new byte[100]).get();
+      }
+    }
+    long full = store.getCacheStats().getSizeBytes();
+    assertThat(critical.getCacheStats().getSizeBytes()).isEqualTo(full);
+
+    SimpleStoreFactory.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+    // Cache hits skip the queue, wait for the trims with an operation that does not.
+    store.keys().get();
+    critical.keys().get();
+    assertThat(store.getCacheStats().getSizeBytes()).isEqualTo(full / 2);
+    assertThat(store.getCacheStats().getEvictionCount()).isEqualTo(2);
+    assertThat(critical.getCacheStats().getSizeBytes()).isEqualTo(full);
+
+    SimpleStoreFactory.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    store.keys().get();
+    critical.keys().get();
+    assertThat(store.getCacheStats().getEvictionCount()).isEqualTo(4);
+    assertThat(critical.getCacheStats().getEvictionCount()).isEqualTo(4);
+    // Trimmed values are read back from disk.
+    assertThat(store.get("key0").get()).hasLength(100);
+
+    store.close();
+    critical.close();
+  }
+
+  @Test
+  public void criticalTrimmedLast() {
+    for (int level = 0; level <= ComponentCallbacks2.TRIM_MEMORY_COMPLETE; level++) {
+      assertThat(SimpleStoreFactory.retainFraction(level, true))
+          .isAtLeast(SimpleStoreFactory.retainFraction(level, false));
+    }
+  }
 }
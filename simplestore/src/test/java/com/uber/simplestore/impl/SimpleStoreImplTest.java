@@ -21,12 +21,26 @@ import static org.junit.Assert.fail;
 
 import android.content.Context;
 import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.uber.simplestore.*;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.junit.After;
@@ -249,6 +263,567 @@ public final class SimpleStoreImplTest {
     }
   }
 
+  @Test
+  public void compression() throws Exception {
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT.toBuilder().setCompression(new DeflateCodec(), 16).build();
+    byte[] large = new byte[4096];
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      store.put(TEST_KEY, large).get();
+      store.put("small", VALUE_ONE).get();
+    }
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(large);
+      assertThat(store.get("small").get()).isEqualTo(VALUE_ONE);
+    }
+  }
+
+  @Test
+  public void lookalikesSurviveTurningCompressionOn() throws Exception {
+    byte[] lookalike = new byte[] {(byte) 0xF5, (byte) 0xC0, 0x53, 0x1};
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      store.put(TEST_KEY, lookalike).get();
+      ValueOutputStream out = store.openOutputStream("streamed").get();
+      out.write(lookalike);
+      out.close();
+      out.committed().get();
+    }
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT.toBuilder().setCompression(new DeflateCodec(), 16).build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(lookalike);
+      assertThat(store.get("streamed").get()).isEqualTo(lookalike);
+      store.put("other", lookalike).get();
+    }
+    // Still decoded once turned off again.
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(lookalike);
+      assertThat(store.get("other").get()).isEqualTo(lookalike);
+    }
+  }
+
+  @Test
+  public void lookalikesSurviveTurningChecksumsOn() throws Exception {
+    byte[] lookalike = new byte[] {(byte) 0xF5, (byte) 0xC1, 0x43, 0x1};
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      store.put(TEST_KEY, lookalike).get();
+      ValueOutputStream out = store.openOutputStream("streamed").get();
+      out.write(lookalike);
+      out.close();
+      out.committed().get();
+    }
+    NamespaceConfig config = NamespaceConfig.DEFAULT.toBuilder().setChecksummed(true).build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(lookalike);
+      assertThat(store.get("streamed").get()).isEqualTo(lookalike);
+      store.put("other", lookalike).get();
+    }
+    // Still decoded once turned off again.
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(lookalike);
+      assertThat(store.get("other").get()).isEqualTo(lookalike);
+    }
+  }
+
+  @Test
+  public void appendLogFormat() throws Exception {
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT.toBuilder().setStorageFormat(StorageFormat.APPEND_LOG).build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      store.put(TEST_KEY, VALUE_ONE).get();
+      store.putString("other", "foo").get();
+      store.remove("other").get();
+    }
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+      assertThat(store.contains("other").get()).isFalse();
+      store.clear().get();
+      assertThat(store.contains(TEST_KEY).get()).isFalse();
+    }
+  }
+
+  @Test
+  public void queuedPutsCommitTogether() throws Exception {
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      CountDownLatch blocker = enqueueBlockingOperation(store);
+      ListenableFuture<byte[]> first = store.put(TEST_KEY, VALUE_ONE);
+      ListenableFuture<byte[]> second = store.put("other", VALUE_TWO);
+      ListenableFuture<byte[]> third = store.put(TEST_KEY, null);
+      ListenableFuture<byte[]> read = store.get(TEST_KEY);
+      ListenableFuture<byte[]> fourth = store.put(TEST_KEY, VALUE_TWO);
+      blocker.countDown();
+      assertThat(first.get()).isEqualTo(VALUE_ONE);
+      assertThat(second.get()).isEqualTo(VALUE_TWO);
+      assertThat(third.get()).isEmpty();
+      assertThat(read.get()).isEmpty();
+      assertThat(fourth.get()).isEqualTo(VALUE_TWO);
+    }
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_TWO);
+      assertThat(store.get("other").get()).isEqualTo(VALUE_TWO);
+    }
+  }
+
+  @Test
+  public void queuedPutsToSameKeyCoalesce() throws Exception {
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT.toBuilder().setStorageFormat(StorageFormat.APPEND_LOG).build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      store.put("other", VALUE_ONE).get();
+      long logLength = logFile().length();
+
+      CountDownLatch blocker = enqueueBlockingOperation(store);
+      ListenableFuture<byte[]> first = store.put(TEST_KEY, VALUE_ONE);
+      ListenableFuture<byte[]> second = store.put(TEST_KEY, null);
+      ListenableFuture<byte[]> third = store.put(TEST_KEY, VALUE_TWO, Durability.BEST_EFFORT);
+      blocker.countDown();
+      assertThat(first.get()).isEqualTo(VALUE_ONE);
+      assertThat(second.get()).isEmpty();
+      assertThat(third.get()).isEqualTo(VALUE_TWO);
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_TWO);
+
+      // Only the last put was appended, taking as much space as a single put of the same size.
+      long appended = logFile().length() - logLength;
+      store.put("next", VALUE_TWO).get();
+      assertThat(logFile().length() - logLength).isEqualTo(2 * appended);
+    }
+  }
+
+  @Test
+  public void bulkOperations() throws Exception {
+    Map<String, byte[]> values = new LinkedHashMap<>();
+    values.put(TEST_KEY, VALUE_ONE);
+    values.put("other", VALUE_TWO);
+    values.put("removed", null);
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      store.put("removed", VALUE_ONE).get();
+      store.putAll(values).get();
+    }
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      Map<String, byte[]> read = store.getAll(values.keySet()).get();
+      assertThat(read.keySet()).containsExactly(TEST_KEY, "other", "removed").inOrder();
+      assertThat(read.get(TEST_KEY)).isEqualTo(VALUE_ONE);
+      assertThat(read.get("other")).isEqualTo(VALUE_TWO);
+      assertThat(read.get("removed")).isEmpty();
+
+      store.removeAll(Arrays.asList(TEST_KEY, "missing")).get();
+      assertThat(store.contains(TEST_KEY).get()).isFalse();
+      assertThat(store.contains("other").get()).isTrue();
+    }
+  }
+
+  @Test
+  public void transactions() throws Exception {
+    for (StorageFormat format : StorageFormat.values()) {
+      NamespaceConfig config = NamespaceConfig.CACHE.toBuilder().setStorageFormat(format).build();
+      String namespace = SAMPLE_SCOPE + format;
+      try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, namespace, config)) {
+        store.put("removed", VALUE_ONE).get();
+        Transaction transaction =
+            new Transaction().put(TEST_KEY, VALUE_ONE).put("other", VALUE_TWO).remove("removed");
+        ListenableFuture<Void> committed = store.commit(transaction);
+        transaction.put("uncommitted", VALUE_ONE);
+        committed.get();
+      }
+      try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, namespace, config)) {
+        assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+        assertThat(store.get("other").get()).isEqualTo(VALUE_TWO);
+        assertThat(store.contains("removed").get()).isFalse();
+        assertThat(store.contains("uncommitted").get()).isFalse();
+      }
+    }
+  }
+
+  @Test
+  public void keysAndScan() throws Exception {
+    for (StorageFormat format : StorageFormat.values()) {
+      NamespaceConfig config = NamespaceConfig.DEFAULT.toBuilder().setStorageFormat(format).build();
+      String namespace = SAMPLE_SCOPE + format;
+      SimpleStore written = SimpleStoreFactory.create(directoryProvider, namespace, config);
+      written.put("b.2", VALUE_TWO).get();
+      written.put("a", VALUE_ONE).get();
+      written.put("b.1", VALUE_ONE).get();
+      written.put("c", VALUE_ONE).get();
+      // Named like files of other keys or bookkeeping.
+      written.put("c.bak", VALUE_TWO).get();
+      written.put("c.new", VALUE_TWO).get();
+      written.put(FilePerKeyStorage.JOURNAL_FILE_NAME, VALUE_TWO).get();
+      // Listed from disk on reopen.
+      closeAndWait(written);
+      try (SimpleStore ignored =
+          SimpleStoreFactory.create(directoryProvider, namespace + "/child", config)) {
+        // Child namespaces are not keys.
+      }
+      try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, namespace, config)) {
+        assertThat(store.keys().get())
+            .containsExactly(
+                FilePerKeyStorage.JOURNAL_FILE_NAME, "a", "b.1", "b.2", "c", "c.bak", "c.new")
+            .inOrder();
+        assertThat(store.get("c").get()).isEqualTo(VALUE_ONE);
+        assertThat(store.get("c.bak").get()).isEqualTo(VALUE_TWO);
+        assertThat(store.get(FilePerKeyStorage.JOURNAL_FILE_NAME).get()).isEqualTo(VALUE_TWO);
+        store.remove("c").get();
+        assertThat(store.keysWithPrefix("c").get()).containsExactly("c.bak", "c.new").inOrder();
+        store.put("b.0", VALUE_TWO).get();
+        assertThat(store.keysWithPrefix("b.").get()).containsExactly("b.0", "b.1", "b.2").inOrder();
+        assertThat(store.keysWithPrefix("d").get()).isEmpty();
+
+        Map<String, byte[]> scanned = new LinkedHashMap<>();
+        store.scan("b.", scanned::put).get();
+        assertThat(scanned.keySet()).containsExactly("b.0", "b.1", "b.2").inOrder();
+        assertThat(scanned.get("b.1")).isEqualTo(VALUE_ONE);
+
+        store.clear().get();
+        assertThat(store.keys().get()).isEmpty();
+      }
+    }
+  }
+
+  @Test
+  public void cacheBudget() throws Exception {
+    NamespaceConfig config = NamespaceConfig.DEFAULT.toBuilder().setCacheBudgetBytes(0).build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      store.put(TEST_KEY, VALUE_ONE).get();
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+      CacheStats stats = store.getCacheStats();
+      assertThat(stats.getHitCount()).isEqualTo(0);
+      assertThat(stats.getMissCount()).isEqualTo(2);
+      assertThat(stats.getSizeBytes()).isEqualTo(0);
+    }
+    assertThat(NamespaceConfig.CRITICAL.getCacheBudgetBytes()).isEqualTo(NamespaceConfig.UNBOUNDED);
+    // A separate namespace, as closing is async and may hand back the instance configured above.
+    try (SimpleStore store =
+        SimpleStoreFactory.create(directoryProvider, "critical", NamespaceConfig.CRITICAL)) {
+      store.put(TEST_KEY, VALUE_ONE).get();
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+      assertThat(store.get("missing").get()).isEmpty();
+      assertThat(store.get("missing").get()).isEmpty();
+      // Absent keys resolve from the key index without touching the cache.
+      CacheStats stats = store.getCacheStats();
+      assertThat(stats.getHitCount()).isEqualTo(1);
+      assertThat(stats.getMissCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void missesResolveFromKeyIndex() throws Exception {
+    SimpleStore store = SimpleStoreFactory.create(directoryProvider, "index");
+    store.put(TEST_KEY, VALUE_ONE).get();
+    store.put("nested/key", VALUE_TWO).get();
+    store.put("x.new", VALUE_TWO).get();
+    store.put("y.bak", VALUE_TWO).get();
+    closeAndWait(store);
+
+    try (SimpleStore reopened = SimpleStoreFactory.create(directoryProvider, "index")) {
+      assertThat(reopened).isNotSameInstanceAs(store);
+      assertThat(reopened.get("missing").get()).isEmpty();
+      assertThat(reopened.getCacheStats().getMissCount()).isEqualTo(0);
+      assertThat(reopened.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+      // Not listed on disk, so read through.
+      assertThat(reopened.get("nested/key").get()).isEqualTo(VALUE_TWO);
+      assertThat(reopened.get("x.new").get()).isEqualTo(VALUE_TWO);
+      assertThat(reopened.get("y.bak").get()).isEqualTo(VALUE_TWO);
+      reopened.remove(TEST_KEY).get();
+      assertThat(reopened.get(TEST_KEY).get()).isEmpty();
+    }
+  }
+
+  @Test
+  public void preload() throws Exception {
+    for (StorageFormat format : StorageFormat.values()) {
+      String namespace = "preload" + format;
+      NamespaceConfig config =
+          NamespaceConfig.DEFAULT.toBuilder().setStorageFormat(format).setPreload(true).build();
+      SimpleStore store = SimpleStoreFactory.create(directoryProvider, namespace, config);
+      for (int i = 0; i < 10; i++) {
+        store.put("key" + i, new byte[] {(byte) i}).get();
+      }
+      closeAndWait(store);
+
+      try (SimpleStore reopened = SimpleStoreFactory.create(directoryProvider, namespace, config)) {
+        assertThat(reopened).isNotSameInstanceAs(store);
+        // Races the preload of the key.
+        reopened.put("key0", VALUE_ONE);
+        assertThat(reopened.get("key0").get()).isEqualTo(VALUE_ONE);
+        assertThat(reopened.get("key5").get()).isEqualTo(new byte[] {5});
+        Map<String, byte[]> values = reopened.getAll(Arrays.asList("key1", "key9")).get();
+        assertThat(values.get("key1")).isEqualTo(new byte[] {1});
+        assertThat(values.get("key9")).isEqualTo(new byte[] {9});
+        for (int i = 1; i < 10; i++) {
+          assertThat(reopened.get("key" + i).get()).isEqualTo(new byte[] {(byte) i});
+        }
+        assertThat(reopened.getCacheStats().getSizeBytes()).isGreaterThan(0);
+        reopened.clear().get();
+        assertThat(reopened.get("key5").get()).isEmpty();
+      }
+    }
+  }
+
+  @Test
+  public void parallelReads() throws Exception {
+    NamespaceConfig config = NamespaceConfig.DEFAULT.toBuilder().setParallelReads(true).build();
+    SimpleStore store = SimpleStoreFactory.create(directoryProvider, "parallel", config);
+    store.put("a", VALUE_ONE).get();
+    store.put("b", VALUE_TWO).get();
+    closeAndWait(store);
+
+    try (SimpleStore reopened = SimpleStoreFactory.create(directoryProvider, "parallel", config)) {
+      assertThat(reopened.keys().get()).containsExactly("a", "b");
+      // Hold back reads started from now on, the namespace queue was created before.
+      List<Runnable> held = new ArrayList<>();
+      SimpleStoreConfig.setIOExecutor(held::add);
+      ListenableFuture<byte[]> a = reopened.get("a");
+      ListenableFuture<Map<String, byte[]>> all = reopened.getAll(Arrays.asList("a", "b"));
+      assertThat(reopened.get("missing").get()).isEmpty();
+      assertThat(a.isDone()).isFalse();
+      assertThat(all.isDone()).isFalse();
+      assertThat(held).hasSize(2);
+
+      for (Runnable read : held) {
+        read.run();
+      }
+      assertThat(a.get()).isEqualTo(VALUE_ONE);
+      assertThat(all.get().get("a")).isEqualTo(VALUE_ONE);
+      assertThat(all.get().get("b")).isEqualTo(VALUE_TWO);
+      SimpleStoreConfig.setIOExecutor(null);
+      reopened.put("a", VALUE_TWO).get();
+      assertThat(reopened.get("a").get()).isEqualTo(VALUE_TWO);
+    }
+  }
+
+  @Test
+  public void singleThreadIoExecutor() throws Exception {
+    ExecutorService io = Executors.newSingleThreadExecutor();
+    SimpleStoreConfig.setIOExecutor(io);
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT
+            .toBuilder()
+            .setPreload(true)
+            .setParallelReads(true)
+            .setStripes(4)
+            .build();
+    try {
+      SimpleStore store = SimpleStoreFactory.create(directoryProvider, "bounded", config);
+      store.put("a", VALUE_ONE).get(5, TimeUnit.SECONDS);
+      store.put("b", VALUE_TWO).get(5, TimeUnit.SECONDS);
+      assertThat(store.keys().get(5, TimeUnit.SECONDS)).containsExactly("a", "b");
+      closeAndWait(store);
+
+      // Preloaded and striped work queued behind the namespace queue on the one thread.
+      try (SimpleStore reopened = SimpleStoreFactory.create(directoryProvider, "bounded", config)) {
+        reopened.put("a", VALUE_TWO);
+        Map<String, byte[]> values =
+            reopened.getAll(Arrays.asList("a", "b")).get(5, TimeUnit.SECONDS);
+        assertThat(values.get("a")).isEqualTo(VALUE_TWO);
+        assertThat(values.get("b")).isEqualTo(VALUE_TWO);
+        assertThat(reopened.keys().get(5, TimeUnit.SECONDS)).containsExactly("a", "b");
+      }
+    } finally {
+      io.shutdown();
+    }
+  }
+
+  @Test
+  public void stripes() throws Exception {
+    NamespaceConfig config = NamespaceConfig.DEFAULT.toBuilder().setStripes(4).build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, "striped", config)) {
+      SimpleStoreImpl impl = (SimpleStoreImpl) store;
+      String other = "b";
+      for (int i = 0; impl.stripeOf(other) == impl.stripeOf("a"); i++) {
+        other = "b" + i;
+      }
+      store.put("a", VALUE_ONE).get();
+      CountDownLatch latch = new CountDownLatch(1);
+      impl.stripeOf("a").execute(() -> Uninterruptibles.awaitUninterruptibly(latch));
+      ListenableFuture<byte[]> slowPut = store.put("a", VALUE_TWO);
+      ListenableFuture<byte[]> slowGet = store.get("a");
+
+      // Keys of other stripes are not held up.
+      assertThat(store.put(other, VALUE_ONE).get()).isEqualTo(VALUE_ONE);
+      assertThat(store.get(other).get()).isEqualTo(VALUE_ONE);
+      assertThat(slowPut.isDone()).isFalse();
+      assertThat(slowGet.isDone()).isFalse();
+      latch.countDown();
+      assertThat(slowGet.get()).isEqualTo(VALUE_TWO);
+      assertThat(slowPut.get()).isEqualTo(VALUE_TWO);
+
+      store.commit(new Transaction().put("c", VALUE_ONE).remove("a")).get();
+      assertThat(store.keys().get()).containsExactly(other, "c").inOrder();
+      Map<String, byte[]> values = store.getAll(Arrays.asList("a", "c")).get();
+      assertThat(values.get("a")).isEmpty();
+      assertThat(values.get("c")).isEqualTo(VALUE_ONE);
+      store.remove(other).get();
+      store.clear().get();
+      assertThat(store.keys().get()).isEmpty();
+    }
+  }
+
+  @Test
+  public void cacheHitsSkipQueue() throws Exception {
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, "")) {
+      assertThat(store.getIfCached(TEST_KEY)).isNull();
+      store.put(TEST_KEY, VALUE_ONE).get();
+      assertThat(store.getIfCached(TEST_KEY)).isEqualTo(VALUE_ONE);
+
+      CountDownLatch latch = enqueueBlockingOperation(store);
+      assertThat(store.get(TEST_KEY).isDone()).isTrue();
+      // Not ahead of a queued change to the key.
+      ListenableFuture<byte[]> put = store.put(TEST_KEY, VALUE_TWO);
+      assertThat(store.getIfCached(TEST_KEY)).isNull();
+      ListenableFuture<byte[]> get = store.get(TEST_KEY);
+      assertThat(get.isDone()).isFalse();
+      latch.countDown();
+      assertThat(get.get()).isEqualTo(VALUE_TWO);
+      assertThat(put.get()).isEqualTo(VALUE_TWO);
+      assertThat(store.getIfCached(TEST_KEY)).isEqualTo(VALUE_TWO);
+
+      latch = enqueueBlockingOperation(store);
+      ListenableFuture<Void> clear = store.clear();
+      assertThat(store.getIfCached(TEST_KEY)).isNull();
+      latch.countDown();
+      clear.get();
+      assertThat(store.get(TEST_KEY).get()).isEmpty();
+      assertThat(store.getIfCached(TEST_KEY)).isNull();
+    }
+  }
+
+  @Test
+  public void bufferValues() throws Exception {
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, "")) {
+      byte[] owned = new byte[] {1, 2, 3};
+      ByteBuffer put = store.putBuffer(TEST_KEY, ByteBuffer.wrap(owned)).get();
+      assertThat(put.isReadOnly()).isTrue();
+      // Stored without a copy.
+      assertThat(store.getIfCached(TEST_KEY)).isSameInstanceAs(owned);
+      ByteBuffer read = store.getBuffer(TEST_KEY).get();
+      assertThat(read.isReadOnly()).isTrue();
+      assertThat(read).isEqualTo(ByteBuffer.wrap(owned));
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(4);
+      direct.put(new byte[] {0, 4, 5, 6}).flip();
+      direct.position(1);
+      store.putBuffer(TEST_KEY, direct).get();
+      assertThat(direct.position()).isEqualTo(1);
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(new byte[] {4, 5, 6});
+
+      ByteBuffer slice = ByteBuffer.wrap(new byte[] {7, 8, 9}, 1, 2);
+      store.putBuffer(TEST_KEY, slice).get();
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(new byte[] {8, 9});
+
+      store.putBuffer(TEST_KEY, null).get();
+      assertThat(store.contains(TEST_KEY).get()).isFalse();
+      assertThat(store.getBuffer(TEST_KEY).get().hasRemaining()).isFalse();
+    }
+  }
+
+  @Test
+  public void streams() throws Exception {
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE)) {
+      ValueOutputStream out = store.openOutputStream(TEST_KEY).get();
+      out.write(VALUE_ONE);
+      assertThat(store.contains(TEST_KEY).get()).isFalse();
+      out.close();
+      out.committed().get();
+      assertThat(store.keys().get()).containsExactly(TEST_KEY);
+
+      InputStream in = store.openInputStream(TEST_KEY).get();
+      // Keeps reading the value it was opened on.
+      store.put(TEST_KEY, VALUE_TWO).get();
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(VALUE_ONE);
+      in.close();
+      try (InputStream cached = store.openInputStream(TEST_KEY).get()) {
+        assertThat(ByteStreams.toByteArray(cached)).isEqualTo(VALUE_TWO);
+      }
+
+      ValueOutputStream aborted = store.openOutputStream(TEST_KEY).get();
+      aborted.write(VALUE_ONE);
+      aborted.abort();
+      assertThat(aborted.committed().isCancelled()).isTrue();
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_TWO);
+
+      ValueOutputStream empty = store.openOutputStream(TEST_KEY).get();
+      empty.close();
+      empty.committed().get();
+      assertThat(store.contains(TEST_KEY).get()).isFalse();
+      try (InputStream absent = store.openInputStream(TEST_KEY).get()) {
+        assertThat(absent.read()).isEqualTo(-1);
+      }
+    }
+  }
+
+  @Test
+  public void corruptCacheValueIsMiss() throws Exception {
+    SimpleStore store =
+        SimpleStoreFactory.create(directoryProvider, "corrupt", NamespaceConfig.CACHE);
+    store.put(TEST_KEY, VALUE_TWO).get();
+    closeAndWait(store);
+    File file =
+        new File(directoryProvider.cacheDirectoryPath(), "simplestore/corrupt/" + TEST_KEY);
+    try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+      torn.setLength(torn.length() - 1);
+    }
+
+    try (SimpleStore reopened =
+        SimpleStoreFactory.create(directoryProvider, "corrupt", NamespaceConfig.CACHE)) {
+      assertThat(reopened.get(TEST_KEY).get()).isEmpty();
+      reopened.put(TEST_KEY, VALUE_ONE).get();
+    }
+  }
+
+  @Test
+  public void utf8Strings() throws Exception {
+    SimpleStore legacy = SimpleStoreFactory.create(directoryProvider, "strings");
+    legacy.putString(TEST_KEY, "foo").get();
+    legacy.putString("other", "bar").get();
+    assertThat(legacy.get(TEST_KEY).get()).hasLength(6);
+    closeAndWait(legacy);
+
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT
+            .toBuilder()
+            .setStringEncoding(StringEncoding.UTF_8)
+            .setRewriteLegacyStrings(true)
+            .build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, "strings", config)) {
+      assertThat(store.getString(TEST_KEY).get()).isEqualTo("foo");
+      // Rewritten once read.
+      assertThat(store.keys().get()).hasSize(2);
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(StringEncoding.UTF_8.encode("foo"));
+      assertThat(store.get(TEST_KEY).get()).hasLength(3 + 3);
+
+      // Not over a value changed meanwhile.
+      CountDownLatch latch = enqueueBlockingOperation(store);
+      ListenableFuture<String> read = store.getString("other");
+      store.putString("other", "baz");
+      latch.countDown();
+      assertThat(read.get()).isEqualTo("bar");
+      assertThat(store.keys().get()).hasSize(2);
+      assertThat(store.getString("other").get()).isEqualTo("baz");
+    }
+  }
+
+  @Test
+  public void durability() throws Exception {
+    assertThat(NamespaceConfig.DEFAULT.getDurability()).isEqualTo(Durability.SYNC);
+    assertThat(NamespaceConfig.CACHE.getDurability()).isEqualTo(Durability.ATOMIC);
+    assertThat(NamespaceConfig.CACHE.isChecksummed()).isTrue();
+    NamespaceConfig config =
+        NamespaceConfig.CACHE.toBuilder().setDurability(Durability.BEST_EFFORT).build();
+    assertThat(config.isCache()).isTrue();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      store.put(TEST_KEY, VALUE_ONE).get();
+      store.put("synced", VALUE_TWO, Durability.SYNC).get();
+      store.put("atomic", VALUE_ONE, Durability.ATOMIC).get();
+      store.put("atomic", null, Durability.ATOMIC).get();
+    }
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, SAMPLE_SCOPE, config)) {
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+      assertThat(store.get("synced").get()).isEqualTo(VALUE_TWO);
+      assertThat(store.contains("atomic").get()).isFalse();
+    }
+  }
+
   @Test
   public void oneInstancePerNamespace() {
     String someNamespace = "foo";
@@ -265,6 +840,60 @@ public final class SimpleStoreImplTest {
     }
   }
 
+  @Test
+  public void updateAndCompareAndSet() throws Exception {
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, "")) {
+      ListenableFuture<byte[]> put = store.put(TEST_KEY, VALUE_ONE);
+      ListenableFuture<byte[]> updated =
+          store.update(TEST_KEY, (current) -> Arrays.equals(current, VALUE_ONE) ? VALUE_TWO : null);
+      assertThat(put.get()).isEqualTo(VALUE_ONE);
+      assertThat(updated.get()).isEqualTo(VALUE_TWO);
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_TWO);
+
+      assertThat(store.compareAndSet(TEST_KEY, VALUE_ONE, null).get()).isFalse();
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_TWO);
+      assertThat(store.compareAndSet(TEST_KEY, VALUE_TWO, null).get()).isTrue();
+      assertThat(store.contains(TEST_KEY).get()).isFalse();
+      assertThat(store.compareAndSet(TEST_KEY, null, VALUE_ONE).get()).isTrue();
+      assertThat(store.keys().get()).containsExactly(TEST_KEY);
+
+      ListenableFuture<byte[]> failed =
+          store.update(
+              TEST_KEY,
+              (current) -> {
+                throw new IllegalStateException("update failed");
+              });
+      try {
+        failed.get();
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+      }
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(VALUE_ONE);
+    }
+  }
+
+  @Test
+  public void updateWaitsForStripe() throws Exception {
+    NamespaceConfig config = NamespaceConfig.DEFAULT.toBuilder().setStripes(4).build();
+    try (SimpleStore store = SimpleStoreFactory.create(directoryProvider, "striped", config)) {
+      List<ListenableFuture<byte[]>> updates = new ArrayList<>();
+      store.put(TEST_KEY, new byte[] {0});
+      for (int i = 0; i < 10; i++) {
+        updates.add(store.update(TEST_KEY, (current) -> new byte[] {(byte) (current[0] + 1)}));
+        store.put("other", new byte[] {(byte) i});
+      }
+      assertThat(Futures.allAsList(updates).get()).hasSize(10);
+      assertThat(store.get(TEST_KEY).get()).isEqualTo(new byte[] {10});
+    }
+  }
+
+  private File logFile() {
+    return new File(
+        directoryProvider.filesDirectoryPath(),
+        "simplestore/" + SAMPLE_SCOPE + "/" + AppendLogStorage.LOG_FILE_NAME);
+  }
+
   private CountDownLatch enqueueBlockingOperation(SimpleStore store) {
     CountDownLatch latch = new CountDownLatch(1);
     ((SimpleStoreImpl) store)
@@ -280,4 +909,11 @@ public final class SimpleStoreImplTest {
             });
     return latch;
   }
+
+  private static void closeAndWait(SimpleStore store) throws InterruptedException {
+    store.close();
+    CountDownLatch closed = new CountDownLatch(1);
+    ((SimpleStoreImpl) store).getOrderedExecutor().execute(closed::countDown);
+    closed.await();
+  }
 }
@@ -19,12 +19,22 @@ import static com.google.common.truth.Truth.assertThat;
 
 import android.content.Context;
 import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.uber.simplestore.DirectoryProvider;
 import com.uber.simplestore.NamespaceConfig;
 import com.uber.simplestore.SimpleStoreConfig;
+import com.uber.simplestore.StorageFormat;
+import com.uber.simplestore.StringEncoding;
 import com.uber.simplestore.impl.AndroidDirectoryProvider;
 import com.uber.simplestore.impl.SimpleStoreFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -165,4 +175,121 @@ public final class PrimitiveSimpleStoreTest {
       assertThat(store.contains(TEST_KEY).get()).isFalse();
     }
   }
+
+  @Test
+  public void bulkValues() throws Exception {
+    try (PrimitiveSimpleStore store =
+        PrimitiveSimpleStoreFactory.create(directoryProvider, "", NamespaceConfig.DEFAULT)) {
+      Map<String, Integer> ints = new LinkedHashMap<>();
+      ints.put("int", 42);
+      ints.put("zero", 0);
+      store.putAllInts(ints).get();
+      assertThat(store.getAllInts(ints.keySet()).get()).containsExactlyEntriesIn(ints).inOrder();
+      assertThat(store.contains("zero").get()).isFalse();
+
+      store.putAllLongs(Collections.singletonMap("long", Long.MAX_VALUE)).get();
+      assertThat(store.getAllLongs(Arrays.asList("long", "missing")).get())
+          .containsExactly("long", Long.MAX_VALUE, "missing", 0L);
+
+      store.putAllBooleans(Collections.singletonMap("boolean", true)).get();
+      assertThat(store.getAllBooleans(Collections.singleton("boolean")).get())
+          .containsExactly("boolean", true);
+
+      store.putAllDoubles(Collections.singletonMap("double", 1.5)).get();
+      assertThat(store.getAllDoubles(Collections.singleton("double")).get())
+          .containsExactly("double", 1.5);
+
+      Map<String, String> strings = new LinkedHashMap<>();
+      strings.put("string", "foo");
+      strings.put("empty", "");
+      store.putAllStrings(strings).get();
+      assertThat(store.getAllStrings(strings.keySet()).get()).containsExactlyEntriesIn(strings);
+      assertThat(store.getString("string").get()).isEqualTo("foo");
+    }
+  }
+
+  @Test
+  public void utf8Strings() throws Exception {
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT.toBuilder().setStringEncoding(StringEncoding.UTF_8).build();
+    try (PrimitiveSimpleStore store =
+        PrimitiveSimpleStoreFactory.create(directoryProvider, "", config)) {
+      store.put("legacy", "h\u00e9llo".getBytes(StandardCharsets.UTF_16BE)).get();
+      store.putAllStrings(Collections.singletonMap(TEST_KEY, "h\u00e9llo")).get();
+      assertThat(store.get(TEST_KEY).get()).hasLength(3 + 6);
+      Map<String, String> strings = store.getAllStrings(Arrays.asList(TEST_KEY, "legacy")).get();
+      assertThat(strings.get(TEST_KEY)).isEqualTo("h\u00e9llo");
+      assertThat(strings.get("legacy")).isEqualTo("h\u00e9llo");
+    }
+  }
+
+  @Test
+  public void utf16StringStartingLikeMarker() throws Exception {
+    String lookalike = "\uEFBB\uBF00x";
+    try (PrimitiveSimpleStore store = PrimitiveSimpleStoreFactory.create(directoryProvider, "")) {
+      store.put(TEST_KEY, lookalike).get();
+      // Stored as UTF-8, as UTF-16BE would read back as UTF-8.
+      assertThat(StringEncoding.of(store.get(TEST_KEY).get())).isEqualTo(StringEncoding.UTF_8);
+      assertThat(store.getString(TEST_KEY).get()).isEqualTo(lookalike);
+    }
+  }
+
+  @Test
+  public void packedTable() throws Exception {
+    NamespaceConfig config =
+        NamespaceConfig.DEFAULT.toBuilder().setStorageFormat(StorageFormat.PACKED_TABLE).build();
+    try (PrimitiveSimpleStore store =
+        PrimitiveSimpleStoreFactory.create(directoryProvider, "", config)) {
+      store.put(TEST_KEY, 42).get();
+      store.put("flag", true).get();
+      store.put("big", Long.MAX_VALUE).get();
+      store.put(TEST_KEY, 43).get();
+      store.remove("big").get();
+    }
+    try (PrimitiveSimpleStore store =
+        PrimitiveSimpleStoreFactory.create(directoryProvider, "", config)) {
+      assertThat(store.getInt(TEST_KEY).get()).isEqualTo(43);
+      assertThat(store.getBoolean("flag").get()).isTrue();
+      assertThat(store.contains("big").get()).isFalse();
+      assertThat(store.keys().get()).containsExactly("flag", TEST_KEY).inOrder();
+    }
+  }
+
+  @Test
+  public void decodedValuesReused() throws Exception {
+    try (PrimitiveSimpleStore store =
+        PrimitiveSimpleStoreFactory.create(directoryProvider, "", NamespaceConfig.DEFAULT)) {
+      store.put(TEST_KEY, 42).get();
+      store.put("name", "flag").get();
+      ListenableFuture<Integer> first = store.getInt(TEST_KEY);
+      assertThat(first.get()).isEqualTo(42);
+      assertThat(store.getInt(TEST_KEY)).isSameInstanceAs(first);
+      ListenableFuture<String> name = store.getString("name");
+      assertThat(store.getString("name")).isSameInstanceAs(name);
+
+      // Decoded per type, and invalidated by writes.
+      assertThat(store.getLong(TEST_KEY).get()).isEqualTo(0L);
+      store.put(TEST_KEY, 7).get();
+      assertThat(store.getInt(TEST_KEY).get()).isEqualTo(7);
+      store.remove(TEST_KEY).get();
+      assertThat(store.getInt(TEST_KEY).get()).isEqualTo(0);
+      store.put("name", "other").get();
+      assertThat(store.getString("name").get()).isEqualTo("other");
+    }
+  }
+
+  @Test
+  public void increment() throws Exception {
+    try (PrimitiveSimpleStore store =
+        PrimitiveSimpleStoreFactory.create(directoryProvider, "", NamespaceConfig.DEFAULT)) {
+      List<ListenableFuture<Long>> increments = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        increments.add(store.increment(TEST_KEY, 2));
+      }
+      assertThat(Futures.allAsList(increments).get()).contains(200L);
+      assertThat(store.getLong(TEST_KEY).get()).isEqualTo(200L);
+      assertThat(store.increment(TEST_KEY, -200).get()).isEqualTo(0L);
+      assertThat(store.contains(TEST_KEY).get()).isFalse();
+    }
+  }
 }
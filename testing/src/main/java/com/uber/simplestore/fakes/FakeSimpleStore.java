@@ -16,12 +16,30 @@
 package com.uber.simplestore.fakes;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.uber.simplestore.CacheStats;
+import com.uber.simplestore.Durability;
 import com.uber.simplestore.SimpleStore;
 import com.uber.simplestore.StoreClosedException;
+import com.uber.simplestore.Transaction;
+import com.uber.simplestore.ValueOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import javax.annotation.Nullable;
 
 @SuppressWarnings("UnstableApiUsage")
@@ -61,6 +79,16 @@ public final class FakeSimpleStore implements SimpleStore {
     return returnOrFail(getBytes(key));
   }
 
+  @Override
+  public ListenableFuture<ByteBuffer> getBuffer(String key) {
+    return returnOrFail(ByteBuffer.wrap(getBytes(key)).asReadOnlyBuffer());
+  }
+
+  @Override
+  public ListenableFuture<InputStream> openInputStream(String key) {
+    return returnOrFail(new ByteArrayInputStream(getBytes(key)));
+  }
+
   @Override
   public ListenableFuture<byte[]> put(String key, @Nullable byte[] value) {
     if (value != null) {
@@ -71,6 +99,114 @@ public final class FakeSimpleStore implements SimpleStore {
     return returnOrFail(value);
   }
 
+  @Override
+  public ListenableFuture<ByteBuffer> putBuffer(String key, @Nullable ByteBuffer value) {
+    byte[] bytes = new byte[value == null ? 0 : value.remaining()];
+    if (value != null) {
+      value.duplicate().get(bytes);
+    }
+    put(key, bytes.length == 0 ? null : bytes);
+    return returnOrFail(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+  }
+
+  @Override
+  public ListenableFuture<ValueOutputStream> openOutputStream(String key) {
+    return returnOrFail(new FakeValueOutputStream(key));
+  }
+
+  @Override
+  public ListenableFuture<byte[]> put(String key, @Nullable byte[] value, Durability durability) {
+    return put(key, value);
+  }
+
+  @Override
+  public ListenableFuture<byte[]> update(String key, Function<byte[], byte[]> function) {
+    byte[] value = function.apply(getBytes(key));
+    if (value == null || value.length == 0) {
+      value = new byte[] {};
+      data.remove(key);
+    } else {
+      data.put(key, value);
+    }
+    return returnOrFail(value);
+  }
+
+  @Override
+  public ListenableFuture<Boolean> compareAndSet(
+      String key, @Nullable byte[] expect, @Nullable byte[] update) {
+    boolean matched = Arrays.equals(getBytes(key), expect == null ? new byte[] {} : expect);
+    if (matched) {
+      put(key, update == null || update.length == 0 ? null : update);
+    }
+    return returnOrFail(matched);
+  }
+
+  @Override
+  public ListenableFuture<Map<String, byte[]>> getAll(Collection<String> keys) {
+    Map<String, byte[]> values = new LinkedHashMap<>();
+    for (String key : keys) {
+      values.put(key, getBytes(key));
+    }
+    return returnOrFail(values);
+  }
+
+  @Override
+  public ListenableFuture<Void> putAll(Map<String, byte[]> values) {
+    for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+      if (entry.getValue() != null) {
+        data.put(entry.getKey(), entry.getValue());
+      } else {
+        data.remove(entry.getKey());
+      }
+    }
+    return returnOrFail(null);
+  }
+
+  @Override
+  public ListenableFuture<Void> commit(Transaction transaction) {
+    return putAll(transaction.getWrites());
+  }
+
+  @Override
+  public ListenableFuture<Void> removeAll(Collection<String> keys) {
+    for (String key : keys) {
+      data.remove(key);
+    }
+    return returnOrFail(null);
+  }
+
+  @Override
+  public ListenableFuture<List<String>> keys() {
+    return keysWithPrefix("");
+  }
+
+  @Override
+  public ListenableFuture<List<String>> keysWithPrefix(String prefix) {
+    return returnOrFail(keysStartingWith(prefix));
+  }
+
+  @Override
+  public ListenableFuture<Void> scan(String prefix, EntryVisitor visitor) {
+    for (String key : keysStartingWith(prefix)) {
+      visitor.visit(key, getBytes(key));
+    }
+    return returnOrFail(null);
+  }
+
+  @Nullable
+  @Override
+  public byte[] getIfCached(String key) {
+    if (closed) {
+      throw new StoreClosedException();
+    }
+    return failureType == null ? getBytes(key) : null;
+  }
+
+  @Override
+  public CacheStats getCacheStats() {
+    return new CacheStats(0, 0, 0, 0, 0);
+  }
+
   @Override
   public ListenableFuture<Boolean> contains(String key) {
     return returnOrFail(data.containsKey(key));
@@ -99,6 +235,16 @@ public final class FakeSimpleStore implements SimpleStore {
     return returnOrFail(null);
   }
 
+  private List<String> keysStartingWith(String prefix) {
+    List<String> keys = new ArrayList<>();
+    for (String key : new TreeSet<>(data.keySet())) {
+      if (key.startsWith(prefix)) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
   private byte[] getBytes(String key) {
     if (data.containsKey(key)) {
       byte[] value = data.get(key);
@@ -118,4 +264,47 @@ public final class FakeSimpleStore implements SimpleStore {
     }
     return Futures.immediateFuture(value);
   }
+
+  private final class FakeValueOutputStream extends ValueOutputStream {
+    private final String key;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final SettableFuture<Void> committed = SettableFuture.create();
+
+    FakeValueOutputStream(String key) {
+      this.key = key;
+    }
+
+    @Override
+    public void write(int b) {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public ListenableFuture<Void> committed() {
+      return committed;
+    }
+
+    @Override
+    public void close() {
+      if (committed.isDone()) {
+        return;
+      }
+      byte[] value = out.toByteArray();
+      committed.setFuture(
+          Futures.transform(
+              put(key, value.length == 0 ? null : value),
+              (v) -> null,
+              MoreExecutors.directExecutor()));
+    }
+
+    @Override
+    public void abort() {
+      committed.cancel(false);
+    }
+  }
 }